@@ -0,0 +1,36 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Memoizes Automaton.nextStates per (state, label). Labels of a TransitionSystemImpl
+// are canonical LabelSets with a cached hash, so a repeated lookup is a single probe.
+// Safe to query from several threads, as long as the automaton isn't being changed.
+public class AutomatonIndex<Q, P> {
+
+    private final Automaton<Q, P> aut;
+    private final Map<Q, Map<Set<P>, Set<Q>>> next = new ConcurrentHashMap<>();
+
+    public AutomatonIndex(Automaton<Q, P> aut) {
+        this.aut = aut;
+    }
+
+    public Automaton<Q, P> getAutomaton() {
+        return aut;
+    }
+
+    // like Automaton.nextStates, but never returns null
+    public Set<Q> nextStates(Q q, Set<P> label) {
+        Map<Set<P>, Set<Q>> byLabel = next.computeIfAbsent(q, k -> new ConcurrentHashMap<>());
+        Set<Q> nexts = byLabel.get(label);
+        if (nexts == null) {
+            nexts = aut.nextStates(q, label);
+            if (nexts == null)
+                nexts = Collections.emptySet();
+            byLabel.put(label, nexts);
+        }
+        return nexts;
+    }
+}
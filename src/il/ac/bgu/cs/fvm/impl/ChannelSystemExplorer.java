@@ -0,0 +1,464 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.channelsystem.ParserBasedInterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.*;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+
+/**
+ * Builds the transition system of a channel system straight from the program
+ * graphs of its processes, without building their product program graph. The
+ * moves of a global state (local moves of one process, including buffered
+ * channel operations, and handshakes between two processes on a synchronous
+ * channel) are computed when the state is visited, so only reachable states
+ * are generated. Matching handshake partners are paired up once, up front.
+ *
+ * With {@link #withPartialOrderReduction(Set)}, a state whose moves include a
+ * safe process expands only that process's moves (an ample set). A process is
+ * safe at a location if every transition leaving it uses no channel, touches
+ * only variables no other process mentions, and changes nothing visible. The
+ * result is stutter-equivalent to the full system with respect to the visible
+ * names, so it is fine for checking LTL properties without next over them.
+ *
+ * With {@link #withSymmetry(List, List)}, states that differ only by a
+ * permutation of interchangeable processes (and of their local variables) are
+ * stored once, as the representative with those processes sorted.
+ */
+public class ChannelSystemExplorer<L, A> {
+
+    private static final ParserBasedInterleavingActDef INTERLEAVING = new ParserBasedInterleavingActDef();
+
+    private final List<ProgramGraph<L, A>> pgs;
+    private final MemoizedDefs defs;
+    private final Propositions propositions = new Propositions();
+
+    // outgoing.get(i) maps each location of process i to the transitions leaving it
+    private final List<Map<L, List<PGTransition<L, A>>>> outgoing = new ArrayList<>();
+    // the same, split into local transitions and the handshakes process i starts with a later process
+    private final List<Map<L, List<PGTransition<L, A>>>> local = new ArrayList<>();
+    private final List<Map<L, List<HandShake<L, A>>>> handShakes = new ArrayList<>();
+
+    // null when not reducing
+    private Set<String> visibleNames;
+    private List<Map<L, Boolean>> safe;
+    private Map<String, Integer> owners;
+
+    // null when not reducing by symmetry
+    private List<Integer> symmetric;
+    private List<List<String>> localVariables;
+
+    public ChannelSystemExplorer(ChannelSystem<L, A> cs) {
+        this.pgs = cs.getProgramGraphs();
+        Set<ActionDef> actionDefs = new LinkedHashSet<>();
+        actionDefs.add(new ParserBasedInterleavingActDef());
+        actionDefs.add(new ParserBasedActDef());
+        Set<ConditionDef> conditionDefs = new HashSet<>();
+        conditionDefs.add(new ParserBasedCondDef());
+        this.defs = new MemoizedDefs(actionDefs, conditionDefs);
+
+        for (ProgramGraph<L, A> pg : pgs) {
+            Map<L, List<PGTransition<L, A>>> out = new HashMap<>();
+            Map<L, List<PGTransition<L, A>>> loc = new HashMap<>();
+            for (PGTransition<L, A> tran : pg.getTransitions()) {
+                out.computeIfAbsent(tran.getFrom(), l -> new ArrayList<>()).add(tran);
+                if (!isOneSided(tran.getAction()))
+                    loc.computeIfAbsent(tran.getFrom(), l -> new ArrayList<>()).add(tran);
+            }
+            outgoing.add(out);
+            local.add(loc);
+        }
+
+        for (int i = 0; i < pgs.size(); i++) {
+            Map<L, List<HandShake<L, A>>> shakes = new HashMap<>();
+            for (PGTransition<L, A> ti : pgs.get(i).getTransitions()) {
+                if (!isOneSided(ti.getAction()))
+                    continue;
+                for (int j = i + 1; j < pgs.size(); j++) {
+                    for (PGTransition<L, A> tj : pgs.get(j).getTransitions()) {
+                        A action = handShakeAction(ti.getAction(), tj.getAction());
+                        if (action != null) {
+                            shakes.computeIfAbsent(ti.getFrom(), l -> new ArrayList<>())
+                                    .add(new HandShake<>(ti, j, tj, action, mergeConditions(ti.getCondition(), tj.getCondition())));
+                        }
+                    }
+                }
+            }
+            handShakes.add(shakes);
+        }
+    }
+
+    /**
+     * Enables the partial-order reduction. {@code visibleNames} are the
+     * variables and locations (by their string form) the property looks at.
+     */
+    public ChannelSystemExplorer<L, A> withPartialOrderReduction(Set<String> visibleNames) {
+        this.visibleNames = visibleNames;
+        this.safe = new ArrayList<>();
+        this.owners = new HashMap<>();
+        for (int i = 0; i < pgs.size(); i++) {
+            safe.add(new HashMap<>());
+            for (PGTransition<L, A> tran : pgs.get(i).getTransitions()) {
+                for (String id : identifiers(tran)) {
+                    Integer owner = owners.get(id);
+                    owners.put(id, owner == null || owner == i ? i : -1);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Treats the given processes as interchangeable. They must run copies of
+     * the same program graph (same locations), except that each has its own
+     * local variables: {@code localVariables.get(k)} are the local variables of
+     * {@code processes.get(k)}, listed in the same order for every process.
+     * Properties checked on the result should be symmetric in these processes.
+     */
+    public ChannelSystemExplorer<L, A> withSymmetry(List<Integer> processes, List<List<String>> localVariables) {
+        if (processes.size() != localVariables.size())
+            throw new IllegalArgumentException("expected local variables for each symmetric process");
+        for (List<String> vars : localVariables) {
+            if (vars.size() != localVariables.get(0).size())
+                throw new IllegalArgumentException("symmetric processes must have matching local variables");
+        }
+        this.symmetric = processes;
+        this.localVariables = localVariables;
+        return this;
+    }
+
+    public TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> explore() {
+        TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts = new TransitionSystemImpl<>();
+        ts.addAllActions(declaredActions());
+
+        Set<Pair<List<L>, Map<String, Object>>> visited = new HashSet<>();
+        Queue<Pair<List<L>, Map<String, Object>>> frontier = new ArrayDeque<>();
+        for (Pair<List<L>, Map<String, Object>> state : initialStates()) {
+            Pair<List<L>, Map<String, Object>> init = canonical(state);
+            if (visited.add(init)) {
+                addState(ts, init);
+                frontier.add(init);
+            }
+            ts.setInitial(init, true);
+        }
+
+        while (!frontier.isEmpty()) {
+            Pair<List<L>, Map<String, Object>> state = frontier.poll();
+            List<Move<L, A>> moves = moves(state);
+            if (visibleNames != null) {
+                List<Move<L, A>> ample = ample(state, moves, visited);
+                if (ample != null)
+                    moves = ample;
+            }
+            for (Move<L, A> move : moves) {
+                Pair<List<L>, Map<String, Object>> to = canonical(move.target());
+                if (visited.add(to)) {
+                    addState(ts, to);
+                    frontier.add(to);
+                }
+                ts.addTransition(new Transition<>(state, move.action, to));
+            }
+        }
+
+        return ts;
+    }
+
+    public List<Pair<List<L>, Map<String, Object>>> initialStates() {
+        // concatenate one initialization of each process that has any
+        List<List<String>> inits = new ArrayList<>();
+        inits.add(new ArrayList<>());
+        for (ProgramGraph<L, A> pg : pgs) {
+            if (pg.getInitalizations().isEmpty())
+                continue;
+            List<List<String>> extended = new ArrayList<>();
+            for (List<String> prefix : inits) {
+                for (List<String> init : pg.getInitalizations()) {
+                    List<String> concat = new ArrayList<>(prefix);
+                    concat.addAll(init);
+                    extended.add(concat);
+                }
+            }
+            inits = extended;
+        }
+
+        Set<Map<String, Object>> evals = new LinkedHashSet<>();
+        for (List<String> init : inits) {
+            Map<String, Object> eval = defs.empty();
+            for (String action : init) {
+                eval = defs.effect(eval, action);
+            }
+            evals.add(eval);
+        }
+
+        List<List<L>> locations = new ArrayList<>();
+        locations.add(new ArrayList<>());
+        for (ProgramGraph<L, A> pg : pgs) {
+            List<List<L>> extended = new ArrayList<>();
+            for (List<L> prefix : locations) {
+                for (L init : pg.getInitialLocations()) {
+                    List<L> locs = new ArrayList<>(prefix);
+                    locs.add(init);
+                    extended.add(locs);
+                }
+            }
+            locations = extended;
+        }
+
+        List<Pair<List<L>, Map<String, Object>>> states = new ArrayList<>();
+        for (List<L> locs : locations) {
+            for (Map<String, Object> eval : evals) {
+                states.add(new Pair<>(locs, eval));
+            }
+        }
+        return states;
+    }
+
+    // all moves enabled at state
+    List<Move<L, A>> moves(Pair<List<L>, Map<String, Object>> state) {
+        List<Move<L, A>> moves = new ArrayList<>();
+        List<L> locs = state.first;
+        Map<String, Object> eval = state.second;
+
+        for (int i = 0; i < pgs.size(); i++) {
+            for (PGTransition<L, A> tran : local.get(i).getOrDefault(locs.get(i), Collections.emptyList())) {
+                if (defs.evaluate(eval, tran.getCondition())) {
+                    Map<String, Object> effect = defs.effect(eval, tran.getAction());
+                    if (effect != null) {
+                        List<L> to = new ArrayList<>(locs);
+                        to.set(i, tran.getTo());
+                        moves.add(new Move<>(i, tran.getAction(), to, effect));
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < pgs.size(); i++) {
+            for (HandShake<L, A> shake : handShakes.get(i).getOrDefault(locs.get(i), Collections.emptyList())) {
+                if (!shake.second.getFrom().equals(locs.get(shake.j)))
+                    continue;
+                if (defs.evaluate(eval, shake.condition)) {
+                    Map<String, Object> effect = defs.effect(eval, shake.action);
+                    if (effect != null) {
+                        List<L> to = new ArrayList<>(locs);
+                        to.set(i, shake.first.getTo());
+                        to.set(shake.j, shake.second.getTo());
+                        moves.add(new Move<>(-1, shake.action, to, effect));
+                    }
+                }
+            }
+        }
+
+        return moves;
+    }
+
+    // the moves of the first safe process that has some, if they all lead to new states
+    private List<Move<L, A>> ample(Pair<List<L>, Map<String, Object>> state, List<Move<L, A>> moves,
+                                   Set<Pair<List<L>, Map<String, Object>>> visited) {
+        for (int i = 0; i < pgs.size(); i++) {
+            if (!isSafe(i, state.first.get(i)))
+                continue;
+            List<Move<L, A>> ample = new ArrayList<>();
+            for (Move<L, A> move : moves) {
+                if (move.process == i)
+                    ample.add(move);
+            }
+            if (ample.isEmpty() || ample.size() == moves.size())
+                continue;
+
+            // cycle proviso: an ample move back into explored states could close a
+            // cycle on which some process is postponed forever
+            boolean allNew = true;
+            for (Move<L, A> move : ample) {
+                if (visited.contains(canonical(move.target()))) {
+                    allNew = false;
+                    break;
+                }
+            }
+            if (allNew)
+                return ample;
+        }
+        return null;
+    }
+
+    // the representative of state's symmetry class: symmetric processes sorted by location, then local values
+    private Pair<List<L>, Map<String, Object>> canonical(Pair<List<L>, Map<String, Object>> state) {
+        if (symmetric == null)
+            return state;
+
+        List<Integer> order = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int k = 0; k < symmetric.size(); k++) {
+            order.add(k);
+            StringBuilder key = new StringBuilder(state.first.get(symmetric.get(k)).toString());
+            for (String var : localVariables.get(k)) {
+                key.append('\0').append(state.second.get(var));
+            }
+            keys.add(key.toString());
+        }
+        order.sort(Comparator.comparing(keys::get));
+
+        boolean sorted = true;
+        for (int k = 0; k < order.size(); k++) {
+            sorted &= order.get(k) == k;
+        }
+        if (sorted)
+            return state;
+
+        // process symmetric.get(k) takes over the location and locals of symmetric.get(order.get(k))
+        List<L> locs = new ArrayList<>(state.first);
+        Valuation.Builder eval = ((Valuation) state.second).edit();
+        for (int k = 0; k < order.size(); k++) {
+            int from = order.get(k);
+            locs.set(symmetric.get(k), state.first.get(symmetric.get(from)));
+            for (int v = 0; v < localVariables.get(k).size(); v++) {
+                String var = localVariables.get(k).get(v);
+                String source = localVariables.get(from).get(v);
+                if (state.second.containsKey(source))
+                    eval.put(var, state.second.get(source));
+                else
+                    eval.remove(var);
+            }
+        }
+        return new Pair<>(locs, eval.build());
+    }
+
+    private boolean isSafe(int process, L location) {
+        return safe.get(process).computeIfAbsent(location, l -> {
+            if (visibleNames.contains(l.toString()))
+                return false;
+            for (PGTransition<L, A> tran : outgoing(process, l)) {
+                String action = tran.getAction().toString();
+                String condition = tran.getCondition();
+                if (action.contains("?") || action.contains("!") || condition.contains("?") || condition.contains("!"))
+                    return false;
+                if (visibleNames.contains(tran.getTo().toString()))
+                    return false;
+                for (String id : identifiers(tran)) {
+                    if (owners.get(id) != process)
+                        return false;
+                }
+                for (String id : MemoizedDefs.identifiers(action)) {
+                    if (visibleNames.contains(id))
+                        return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    // every action a transition of this system can be labeled with
+    public Set<A> declaredActions() {
+        Set<A> actions = new LinkedHashSet<>();
+        for (int i = 0; i < pgs.size(); i++) {
+            for (List<PGTransition<L, A>> trans : local.get(i).values()) {
+                for (PGTransition<L, A> tran : trans) {
+                    actions.add(tran.getAction());
+                }
+            }
+            for (List<HandShake<L, A>> shakes : handShakes.get(i).values()) {
+                for (HandShake<L, A> shake : shakes) {
+                    actions.add(shake.action);
+                }
+            }
+        }
+        return actions;
+    }
+
+    private void addState(TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts,
+                          Pair<List<L>, Map<String, Object>> state) {
+        ts.addState(state);
+        for (L loc : state.first) {
+            ts.addAtomicProposition(loc.toString());
+            ts.addToLabel(state, loc.toString());
+        }
+        for (Map.Entry<String, Object> var : state.second.entrySet()) {
+            String ap = propositions.of(var.getKey(), var.getValue());
+            ts.addAtomicProposition(ap);
+            ts.addToLabel(state, ap);
+        }
+    }
+
+    private List<PGTransition<L, A>> outgoing(int process, L location) {
+        return outgoing.get(process).getOrDefault(location, Collections.emptyList());
+    }
+
+    private static Set<String> identifiers(PGTransition<?, ?> tran) {
+        Set<String> ids = MemoizedDefs.identifiers(tran.getAction().toString());
+        ids.addAll(MemoizedDefs.identifiers(tran.getCondition()));
+        return ids;
+    }
+
+    static boolean isOneSided(Object action) {
+        return action instanceof String && INTERLEAVING.isOneSidedAction((String) action);
+    }
+
+    // the handshake of two one-sided actions on the same channel, or null if they don't match
+    static <A> A handShakeAction(A pgaction, A pgiaction) {
+        if (!isOneSided(pgaction) || !isOneSided(pgiaction))
+            return null;
+
+        if (((String)pgaction).contains("?") && ((String)pgiaction).contains("!")){
+            String pgchannel = ((String) pgaction).substring(0, ((String) pgaction).indexOf("?"));
+            String pgichannel = ((String) pgiaction).substring(0, ((String) pgiaction).indexOf("!"));
+            if(  pgchannel.equals(pgichannel))
+                return (A)String.format("%s|%s", pgaction, pgiaction);
+        }
+
+        if (((String)pgaction).contains("!") && ((String)pgiaction).contains("?")){
+            String pgchannel = ((String) pgaction).substring(0, ((String) pgaction).indexOf("!"));
+            String pgichannel = ((String) pgiaction).substring(0, ((String) pgiaction).indexOf("?"));
+            if ( pgchannel.equals(pgichannel)) {
+                return (A)String.format("%s|%s", pgaction.toString(), pgiaction.toString());
+            }
+        }
+
+        return null;
+    }
+
+    static String mergeConditions(String PGCondition, String PGiCondition) {
+        if (PGCondition.length() == 0)
+            return PGiCondition;
+        if (PGiCondition.length() == 0)
+            return PGCondition;
+        return "(" + PGCondition + ") && (" + PGiCondition + ")";
+    }
+
+    // a move of process (or -1 for a handshake) to new locations and a new evaluation
+    static class Move<L, A> {
+        final int process;
+        final A action;
+        final List<L> to;
+        final Map<String, Object> eval;
+
+        Move(int process, A action, List<L> to, Map<String, Object> eval) {
+            this.process = process;
+            this.action = action;
+            this.to = to;
+            this.eval = eval;
+        }
+
+        Pair<List<L>, Map<String, Object>> target() {
+            return new Pair<>(to, eval);
+        }
+    }
+
+    // a one-sided transition of some process i matched with one of process j > i
+    static class HandShake<L, A> {
+        final PGTransition<L, A> first;
+        final int j;
+        final PGTransition<L, A> second;
+        final A action;
+        final String condition;
+
+        HandShake(PGTransition<L, A> first, int j, PGTransition<L, A> second, A action, String condition) {
+            this.first = first;
+            this.j = j;
+            this.second = second;
+            this.action = action;
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+
+/**
+ * The reachable part of a circuit's transition system. A state is an input
+ * valuation with a register valuation, and every input valuation can follow
+ * any state, so the reachable states are all inputs paired with the register
+ * values reachable from all registers off; one BFS over register values finds
+ * those, adding each value's states as it is reached.
+ *
+ * Register values are {@link PackedCircuit} words when the circuit's names fit
+ * in words, and maps otherwise; the traversal is the same for both. Either way
+ * the states, actions and labels are those of the plain map semantics.
+ */
+public class CircuitUnfolding {
+
+    // how register values are kept during the traversal; inputs are always numbered
+    private interface Encoding<R> {
+
+        // every input valuation; the index of one is its number
+        List<Map<String, Boolean>> inputs();
+
+        // all registers off
+        R off();
+
+        R step(int in, R regs);
+
+        Map<String, Boolean> view(R regs);
+
+        // the names that are on in a state
+        Collection<String> label(int in, R regs);
+    }
+
+    private final Circuit c;
+
+    public CircuitUnfolding(Circuit c) {
+        // every input valuation becomes an action, so they are counted in a long
+        if (c.getInputPortNames().size() >= Long.SIZE - 1)
+            throw new IllegalArgumentException("too many inputs to enumerate: " + c.getInputPortNames().size());
+        this.c = c;
+    }
+
+    public TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> unfold() {
+        return PackedCircuit.fits(c) ? unfold(new Words(new PackedCircuit(c))) : unfold(new Maps(c));
+    }
+
+    private <R> TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> unfold(Encoding<R> encoding) {
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = new TransitionSystemImpl<>();
+
+        // aps
+        for (String reg : c.getRegisterNames()) {
+            ts.addAtomicProposition(reg);
+        }
+        for (String input : c.getInputPortNames()) {
+            ts.addAtomicProposition(input);
+        }
+        for (String output : c.getOutputPortNames()) {
+            ts.addAtomicProposition(output);
+        }
+
+        // act
+        List<Map<String, Boolean>> inputs = encoding.inputs();
+        ts.addAllActions(inputs);
+
+        // register value to its map, for the values found so far
+        Map<R, Map<String, Boolean>> reached = new HashMap<>();
+        Queue<R> frontier = new ArrayDeque<>();
+        R off = encoding.off();
+        reached.put(off, addStates(ts, encoding, off));
+        frontier.add(off);
+        for (Pair<Map<String, Boolean>, Map<String, Boolean>> init : new ArrayList<>(ts.getStates())) {
+            ts.setInitial(init, true);
+        }
+
+        while (!frontier.isEmpty()) {
+            R regs = frontier.poll();
+            Map<String, Boolean> regsMap = reached.get(regs);
+            for (int in = 0; in < inputs.size(); in++) {
+                R nextRegs = encoding.step(in, regs);
+                Map<String, Boolean> next = reached.get(nextRegs);
+                if (next == null) {
+                    next = addStates(ts, encoding, nextRegs);
+                    reached.put(nextRegs, next);
+                    frontier.add(nextRegs);
+                }
+
+                // trans
+                Pair<Map<String, Boolean>, Map<String, Boolean>> state = new Pair<>(inputs.get(in), regsMap);
+                for (Map<String, Boolean> act : inputs) {
+                    ts.addTransition(new Transition<>(state, act, new Pair<>(act, next)));
+                }
+            }
+        }
+
+        return ts;
+    }
+
+    // adds and labels the states of a register value, one per input; returns the value's map
+    private <R> Map<String, Boolean> addStates(TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts,
+                                               Encoding<R> encoding, R regs) {
+        Map<String, Boolean> regsMap = encoding.view(regs);
+        List<Map<String, Boolean>> inputs = encoding.inputs();
+        for (int in = 0; in < inputs.size(); in++) {
+            Pair<Map<String, Boolean>, Map<String, Boolean>> state = new Pair<>(inputs.get(in), regsMap);
+            ts.addState(state);
+            for (String ap : encoding.label(in, regs)) {
+                ts.addToLabel(state, ap);
+            }
+        }
+        return regsMap;
+    }
+
+    // registers as words; an input's number is its word, and maps are views of words
+    private static final class Words implements Encoding<Long> {
+
+        private final PackedCircuit pc;
+        private final List<Map<String, Boolean>> inputs = new ArrayList<>();
+
+        Words(PackedCircuit pc) {
+            this.pc = pc;
+            for (long in = 0; in < 1L << pc.getInputs().size(); in++) {
+                inputs.add(pc.getInputs().view(in));
+            }
+        }
+
+        @Override
+        public List<Map<String, Boolean>> inputs() {
+            return inputs;
+        }
+
+        @Override
+        public Long off() {
+            return 0L;
+        }
+
+        @Override
+        public Long step(int in, Long regs) {
+            return pc.step(in, regs);
+        }
+
+        @Override
+        public Map<String, Boolean> view(Long regs) {
+            return pc.getRegisters().view(regs);
+        }
+
+        @Override
+        public Collection<String> label(int in, Long regs) {
+            return pc.label(in, regs);
+        }
+    }
+
+    // registers as the circuit's own maps, for circuits with too many names to pack into words
+    private static final class Maps implements Encoding<Map<String, Boolean>> {
+
+        private final Circuit c;
+        private final List<Map<String, Boolean>> inputs;
+
+        Maps(Circuit c) {
+            this.c = c;
+            this.inputs = valuations(c.getInputPortNames());
+        }
+
+        @Override
+        public List<Map<String, Boolean>> inputs() {
+            return inputs;
+        }
+
+        @Override
+        public Map<String, Boolean> off() {
+            Map<String, Boolean> off = new HashMap<>();
+            for (String reg : c.getRegisterNames()) {
+                off.put(reg, false);
+            }
+            return off;
+        }
+
+        @Override
+        public Map<String, Boolean> step(int in, Map<String, Boolean> regs) {
+            return c.updateRegisters(inputs.get(in), regs);
+        }
+
+        @Override
+        public Map<String, Boolean> view(Map<String, Boolean> regs) {
+            return regs;
+        }
+
+        @Override
+        public Collection<String> label(int in, Map<String, Boolean> regs) {
+            List<String> label = new ArrayList<>();
+            for (Map<String, Boolean> values : Arrays.asList(inputs.get(in), regs, c.computeOutputs(inputs.get(in), regs))) {
+                for (Map.Entry<String, Boolean> value : values.entrySet()) {
+                    if (Boolean.TRUE.equals(value.getValue()))
+                        label.add(value.getKey());
+                }
+            }
+            return label;
+        }
+
+        // every true/false valuation of names
+        private static List<Map<String, Boolean>> valuations(Set<String> names) {
+            List<Map<String, Boolean>> valuations = new ArrayList<>();
+            valuations.add(new HashMap<>());
+            for (String name : names) {
+                List<Map<String, Boolean>> extended = new ArrayList<>();
+                for (Map<String, Boolean> valuation : valuations) {
+                    for (boolean value : new boolean[]{false, true}) {
+                        Map<String, Boolean> next = new HashMap<>(valuation);
+                        next.put(name, value);
+                        extended.add(next);
+                    }
+                }
+                valuations = extended;
+            }
+            return valuations;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * N-ary parallel composition of transition systems. Components are read in
+ * their int form, and global states are explored as flat {@link IntVector}s of
+ * component state ids, starting from the initial tuples, so only reachable
+ * global states are ever created and no intermediate products are built.
+ *
+ * A handshake action moves all components at once (each one along one of its
+ * own transitions for that action), and can't be taken unless every component
+ * can take it; any other action moves a single component. This is the result
+ * of chaining the binary {@code interleave(ts1, ts2, handShakingActions)},
+ * with flat lists in place of nested pairs.
+ */
+public class Composition<S, A, P> {
+
+    private final List<IntTransitionSystem<S, A, P>> components = new ArrayList<>();
+    private final Set<A> handShakingActions;
+
+    private final Interner<A> actions = new Interner<>();
+    // localToGlobal.get(i)[a] is the global action id of component i's action a
+    private final List<int[]> localToGlobal = new ArrayList<>();
+    private final boolean[] isHandShake;
+
+    private final Interner<IntVector> states = new Interner<>();
+    private final List<int[]> transitions = new ArrayList<>(); // {from, action, to}
+
+    public Composition(List<TransitionSystem<S, A, P>> tss, Set<A> handShakingActions) {
+        if (tss.isEmpty())
+            throw new IllegalArgumentException("nothing to compose");
+        this.handShakingActions = handShakingActions;
+
+        for (TransitionSystem<S, A, P> ts : tss) {
+            IntTransitionSystem<S, A, P> component = IntTransitionSystem.of(ts);
+            components.add(component);
+
+            int[] toGlobal = new int[component.actionCount()];
+            for (int a = 0; a < toGlobal.length; a++) {
+                toGlobal[a] = actions.intern(component.action(a));
+            }
+            localToGlobal.add(toGlobal);
+        }
+
+        isHandShake = new boolean[actions.size()];
+        for (int a = 0; a < actions.size(); a++) {
+            isHandShake[a] = handShakingActions.contains(actions.get(a));
+        }
+    }
+
+    public TransitionSystem<List<S>, A, P> compose() {
+        explore();
+
+        TransitionSystem<List<S>, A, P> ts = new TransitionSystemImpl<>();
+        for (IntTransitionSystem<S, A, P> component : components) {
+            for (int a = 0; a < component.actionCount(); a++) {
+                ts.addAction(component.action(a));
+            }
+            for (int p = 0; p < component.atomicPropositionCount(); p++) {
+                ts.addAtomicProposition(component.atomicProposition(p));
+            }
+        }
+
+        List<List<S>> decoded = new ArrayList<>(states.size());
+        for (int g = 0; g < states.size(); g++) {
+            IntVector state = states.get(g);
+            List<S> tuple = new ArrayList<>(state.size());
+            for (int i = 0; i < state.size(); i++) {
+                tuple.add(components.get(i).state(state.get(i)));
+            }
+            List<S> s = Collections.unmodifiableList(tuple);
+            decoded.add(s);
+            ts.addState(s);
+            for (int i = 0; i < state.size(); i++) {
+                for (int p : components.get(i).label(state.get(i))) {
+                    ts.addToLabel(s, components.get(i).atomicProposition(p));
+                }
+            }
+        }
+
+        for (int[] init : initialTuples()) {
+            ts.setInitial(decoded.get(states.idOf(new IntVector(init))), true);
+        }
+        for (int[] t : transitions) {
+            ts.addTransition(new Transition<>(decoded.get(t[0]), actions.get(t[1]), decoded.get(t[2])));
+        }
+
+        return ts;
+    }
+
+    private void explore() {
+        Queue<Integer> frontier = new ArrayDeque<>();
+        for (int[] init : initialTuples()) {
+            visit(new IntVector(init), frontier);
+        }
+
+        while (!frontier.isEmpty()) {
+            int from = frontier.poll();
+            IntVector state = states.get(from);
+
+            // asynchronous moves: one component alone
+            for (int i = 0; i < components.size(); i++) {
+                IntTransitionSystem<S, A, P> component = components.get(i);
+                int local = state.get(i);
+                for (int t = component.outStart(local); t < component.outEnd(local); t++) {
+                    int action = localToGlobal.get(i)[component.outAction(t)];
+                    if (!isHandShake[action]) {
+                        int to = visit(state.with(i, component.outTarget(t)), frontier);
+                        transitions.add(new int[]{from, action, to});
+                    }
+                }
+            }
+
+            // synchronous moves: every component along the same handshake action
+            IntTransitionSystem<S, A, P> first = components.get(0);
+            Set<Integer> handShakes = new LinkedHashSet<>();
+            for (int t = first.outStart(state.get(0)); t < first.outEnd(state.get(0)); t++) {
+                int action = localToGlobal.get(0)[first.outAction(t)];
+                if (isHandShake[action])
+                    handShakes.add(action);
+            }
+            for (int action : handShakes) {
+                synchronize(from, state, action, frontier);
+            }
+        }
+    }
+
+    private void synchronize(int from, IntVector state, int action, Queue<Integer> frontier) {
+        List<int[]> targets = new ArrayList<>(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            int[] next = localSuccessors(i, state.get(i), action);
+            if (next.length == 0)
+                return;
+            targets.add(next);
+        }
+
+        // enumerate the cartesian product of the components' targets
+        int[] choice = new int[components.size()];
+        int[] tuple = new int[components.size()];
+        while (true) {
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = targets.get(i)[choice[i]];
+            }
+            int to = visit(new IntVector(tuple), frontier);
+            transitions.add(new int[]{from, action, to});
+
+            int i = 0;
+            while (i < choice.length && ++choice[i] == targets.get(i).length) {
+                choice[i++] = 0;
+            }
+            if (i == choice.length)
+                return;
+        }
+    }
+
+    // distinct successors of component i's state local under the given global action
+    private int[] localSuccessors(int i, int local, int action) {
+        IntTransitionSystem<S, A, P> component = components.get(i);
+        int[] toGlobal = localToGlobal.get(i);
+        int[] next = new int[component.outEnd(local) - component.outStart(local)];
+        int count = 0;
+        for (int t = component.outStart(local); t < component.outEnd(local); t++) {
+            if (toGlobal[component.outAction(t)] == action)
+                next[count++] = component.outTarget(t);
+        }
+        return Arrays.stream(next, 0, count).distinct().toArray();
+    }
+
+    private int visit(IntVector state, Queue<Integer> frontier) {
+        int id = states.idOf(state);
+        if (id < 0) {
+            id = states.intern(state);
+            frontier.add(id);
+        }
+        return id;
+    }
+
+    private List<int[]> initialTuples() {
+        List<int[]> tuples = new ArrayList<>();
+        tuples.add(new int[0]);
+        for (IntTransitionSystem<S, A, P> component : components) {
+            List<int[]> extended = new ArrayList<>();
+            for (int[] prefix : tuples) {
+                for (int init : component.initialStates()) {
+                    int[] tuple = Arrays.copyOf(prefix, prefix.length + 1);
+                    tuple[prefix.length] = init;
+                    extended.add(tuple);
+                }
+            }
+            tuples = extended;
+        }
+        return tuples;
+    }
+}
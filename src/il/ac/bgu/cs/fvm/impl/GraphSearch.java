@@ -0,0 +1,156 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Depth- and breadth-first traversal of a graph given by a successor function,
+ * using explicit stacks/queues only, so the search depth is bounded by the heap
+ * and not by the thread's stack. A {@link Visitor} is told about discovered
+ * states, examined edges and (for DFS) finished states, and can stop the search
+ * at any of these points. The search remembers the parent of every state it
+ * discovered, and during DFS the current root-to-top path.
+ *
+ * Visited states are kept across calls, so one instance can run several
+ * searches that share a visited set. A stopped search can't be resumed.
+ */
+public class GraphSearch<S> {
+
+    public interface Visitor<S> {
+
+        // s was reached for the first time (pre-order); return false to stop
+        default boolean discover(S s) {
+            return true;
+        }
+
+        // the edge from -> to is being examined, whether or not "to" was visited; return false to stop
+        default boolean edge(S from, S to) {
+            return true;
+        }
+
+        // whether an unvisited successor should be entered
+        default boolean admit(S from, S to) {
+            return true;
+        }
+
+        // all successors of s were handled (post-order); return false to stop
+        default boolean finish(S s) {
+            return true;
+        }
+    }
+
+    private final Function<S, ? extends Iterable<S>> successors;
+
+    // visited states, mapped to the state they were discovered from (null for roots)
+    private final Map<S, S> parents = new HashMap<>();
+
+    // the current DFS path, root first
+    private final List<S> path = new ArrayList<>();
+    private final Map<S, Integer> pathIndex = new HashMap<>();
+
+    public GraphSearch(Function<S, ? extends Iterable<S>> successors) {
+        this.successors = successors;
+    }
+
+    // returns true if the search ran to completion, false if the visitor stopped it
+    public boolean dfs(Iterable<S> roots, Visitor<S> visitor) {
+        Deque<Iterator<S>> iterators = new ArrayDeque<>();
+        for (S root : roots) {
+            if (parents.containsKey(root))
+                continue;
+            if (!enter(root, null, iterators, visitor))
+                return false;
+
+            while (!iterators.isEmpty()) {
+                S top = path.get(path.size() - 1);
+                Iterator<S> it = iterators.peek();
+                if (it.hasNext()) {
+                    S next = it.next();
+                    if (!visitor.edge(top, next))
+                        return false;
+                    if (!parents.containsKey(next) && visitor.admit(top, next)) {
+                        if (!enter(next, top, iterators, visitor))
+                            return false;
+                    }
+                } else {
+                    // finish while still on the path, so the visitor can look at the stack
+                    if (!visitor.finish(top))
+                        return false;
+                    iterators.pop();
+                    path.remove(path.size() - 1);
+                    pathIndex.remove(top);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean enter(S s, S parent, Deque<Iterator<S>> iterators, Visitor<S> visitor) {
+        parents.put(s, parent);
+        pathIndex.put(s, path.size());
+        path.add(s);
+        iterators.push(successors.apply(s).iterator());
+        return visitor.discover(s);
+    }
+
+    // returns true if the search ran to completion, false if the visitor stopped it
+    public boolean bfs(Iterable<S> roots, Visitor<S> visitor) {
+        Queue<S> frontier = new ArrayDeque<>();
+        for (S root : roots) {
+            if (!parents.containsKey(root)) {
+                parents.put(root, null);
+                if (!visitor.discover(root))
+                    return false;
+                frontier.add(root);
+            }
+        }
+
+        while (!frontier.isEmpty()) {
+            S s = frontier.poll();
+            for (S next : successors.apply(s)) {
+                if (!visitor.edge(s, next))
+                    return false;
+                if (!parents.containsKey(next) && visitor.admit(s, next)) {
+                    parents.put(next, s);
+                    if (!visitor.discover(next))
+                        return false;
+                    frontier.add(next);
+                }
+            }
+            if (!visitor.finish(s))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean isVisited(S s) {
+        return parents.containsKey(s);
+    }
+
+    public Set<S> visited() {
+        return Collections.unmodifiableSet(parents.keySet());
+    }
+
+    public S parent(S s) {
+        return parents.get(s);
+    }
+
+    // the discovery path from a root to s, following parents
+    public List<S> pathTo(S s) {
+        LinkedList<S> result = new LinkedList<>();
+        for (S cur = s; cur != null; cur = parents.get(cur)) {
+            result.addFirst(cur);
+        }
+        return result;
+    }
+
+    // position of s on the current DFS path, or -1 if it's not on it
+    public int pathIndex(S s) {
+        Integer index = pathIndex.get(s);
+        return index == null ? -1 : index;
+    }
+
+    public List<S> currentPath() {
+        return new ArrayList<>(path);
+    }
+}
@@ -0,0 +1,158 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A read-only, int-encoded snapshot of a transition system, the form in which
+ * {@link Composition} reads its components. States, actions and atomic
+ * propositions get dense ids, and transitions are stored CSR-style: the
+ * outgoing transitions of state {@code s} are the indices
+ * {@code outStart(s) .. outEnd(s)-1} of the {@code outAction}/{@code outTarget}
+ * arrays.
+ */
+public class IntTransitionSystem<S, A, P> {
+
+    private final Interner<S> states;
+    private final Interner<A> actions;
+    private final Interner<P> aps;
+
+    private final int[] initials;
+    private final int[][] labels;
+
+    private final int[] outStart;
+    private final int[] outAction;
+    private final int[] outTarget;
+
+    private IntTransitionSystem(Interner<S> states, Interner<A> actions, Interner<P> aps, int[] initials, int[][] labels,
+                                int[] from, int[] action, int[] to) {
+        this.states = states;
+        this.actions = actions;
+        this.aps = aps;
+        this.initials = initials;
+        this.labels = labels;
+
+        int n = states.size();
+        outStart = new int[n + 1];
+        outAction = new int[from.length];
+        outTarget = new int[from.length];
+        fillCsr(n, from, action, to, outStart, outAction, outTarget);
+    }
+
+    public static <S, A, P> IntTransitionSystem<S, A, P> of(TransitionSystem<S, A, P> ts) {
+        Interner<S> states = new Interner<>();
+        Interner<A> actions = new Interner<>();
+        Interner<P> aps = new Interner<>();
+
+        for (S s : ts.getStates()) {
+            states.intern(s);
+        }
+        for (A a : ts.getActions()) {
+            actions.intern(a);
+        }
+        for (P p : ts.getAtomicPropositions()) {
+            aps.intern(p);
+        }
+
+        int[] initials = new int[ts.getInitialStates().size()];
+        int i = 0;
+        for (S s : ts.getInitialStates()) {
+            initials[i++] = states.idOf(s);
+        }
+
+        Function<S, Set<P>> labelOf = TransitionSystemImpl.labels(ts);
+        int[][] labels = new int[states.size()][];
+        for (int s = 0; s < states.size(); s++) {
+            Set<P> label = labelOf.apply(states.get(s));
+            int[] ids = new int[label.size()];
+            int j = 0;
+            for (P p : label) {
+                ids[j++] = aps.intern(p);
+            }
+            Arrays.sort(ids);
+            labels[s] = ids;
+        }
+
+        Set<Transition<S, A>> transitions = ts.getTransitions();
+        int[] from = new int[transitions.size()];
+        int[] action = new int[transitions.size()];
+        int[] to = new int[transitions.size()];
+        i = 0;
+        for (Transition<S, A> tran : transitions) {
+            from[i] = states.idOf(tran.getFrom());
+            action[i] = actions.intern(tran.getAction());
+            to[i] = states.idOf(tran.getTo());
+            i++;
+        }
+
+        return new IntTransitionSystem<>(states, actions, aps, initials, labels, from, action, to);
+    }
+
+    // counting sort of the (key, action, value) triples by key
+    private static void fillCsr(int n, int[] key, int[] action, int[] value, int[] start, int[] actionOut, int[] valueOut) {
+        for (int k : key) {
+            start[k + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] next = Arrays.copyOf(start, n);
+        for (int i = 0; i < key.length; i++) {
+            int pos = next[key[i]]++;
+            actionOut[pos] = action[i];
+            valueOut[pos] = value[i];
+        }
+    }
+
+    public int stateCount() {
+        return states.size();
+    }
+
+    public int actionCount() {
+        return actions.size();
+    }
+
+    public int atomicPropositionCount() {
+        return aps.size();
+    }
+
+    public S state(int id) {
+        return states.get(id);
+    }
+
+    public A action(int id) {
+        return actions.get(id);
+    }
+
+    public P atomicProposition(int id) {
+        return aps.get(id);
+    }
+
+    public int[] initialStates() {
+        return initials.clone();
+    }
+
+    // sorted ids of the atomic propositions labeling s
+    public int[] label(int s) {
+        return labels[s].clone();
+    }
+
+    public int outStart(int s) {
+        return outStart[s];
+    }
+
+    public int outEnd(int s) {
+        return outStart[s + 1];
+    }
+
+    public int outAction(int i) {
+        return outAction[i];
+    }
+
+    public int outTarget(int i) {
+        return outTarget[i];
+    }
+}
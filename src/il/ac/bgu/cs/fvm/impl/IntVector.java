@@ -0,0 +1,59 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+
+// An immutable tuple of ints with a cached hash, used as a compact key for global states
+public final class IntVector {
+
+    private final int[] values;
+    private final int hash;
+
+    public IntVector(int[] values) {
+        this(values.clone(), Arrays.hashCode(values));
+    }
+
+    // takes ownership of values, which nobody else may change
+    private IntVector(int[] values, int hash) {
+        this.values = values;
+        this.hash = hash;
+    }
+
+    public int get(int i) {
+        return values[i];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    // a copy with position i set to value
+    public IntVector with(int i, int value) {
+        int[] copy = values.clone();
+        copy[i] = value;
+        return new IntVector(copy, Arrays.hashCode(copy));
+    }
+
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntVector))
+            return false;
+        IntVector other = (IntVector) o;
+        return hash == other.hash && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
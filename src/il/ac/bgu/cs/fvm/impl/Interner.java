@@ -0,0 +1,38 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+// Gives objects dense int ids (0, 1, 2, ...), in order of first appearance
+public class Interner<T> {
+
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    public int intern(T t) {
+        Integer id = ids.get(t);
+        if (id == null) {
+            id = values.size();
+            ids.put(t, id);
+            values.add(t);
+        }
+        return id;
+    }
+
+    // the id of t, or -1 if t was never interned
+    public int idOf(Object t) {
+        Integer id = ids.get(t);
+        return id == null ? -1 : id;
+    }
+
+    public T get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<T> values() {
+        return Collections.unmodifiableList(values);
+    }
+}
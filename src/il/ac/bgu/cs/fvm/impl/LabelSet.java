@@ -0,0 +1,146 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * An immutable set of atomic propositions, stored as a bitset ({@code long[]}
+ * words) over the ids handed out by an {@link Interner}. The hash code is the
+ * usual {@link Set} hash, computed once, so a label set can be used wherever a
+ * plain {@code Set<P>} is expected (e.g. as an {@code Automaton} symbol).
+ * Use a {@link Pool} to share one instance among equal label sets.
+ */
+public final class LabelSet<P> extends AbstractSet<P> {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    private final Interner<P> aps;
+    private final long[] words; // no trailing zero words
+    private final int size;
+    private final int hash;
+
+    private LabelSet(Interner<P> aps, long[] words, int size, int hash) {
+        this.aps = aps;
+        this.words = words;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    public boolean containsId(int id) {
+        int w = id >>> 6;
+        return w < words.length && (words[w] & (1L << id)) != 0;
+    }
+
+    // a copy with the proposition of the given id added
+    public LabelSet<P> with(int id) {
+        if (containsId(id))
+            return this;
+        long[] newWords = Arrays.copyOf(words, Math.max(words.length, (id >>> 6) + 1));
+        newWords[id >>> 6] |= 1L << id;
+        return new LabelSet<>(aps, newWords, size + 1, hash + aps.get(id).hashCode());
+    }
+
+    // a copy with the proposition of the given id removed
+    public LabelSet<P> without(int id) {
+        if (id < 0 || !containsId(id))
+            return this;
+        long[] newWords = words.clone();
+        newWords[id >>> 6] &= ~(1L << id);
+        int length = newWords.length;
+        while (length > 0 && newWords[length - 1] == 0) {
+            length--;
+        }
+        return new LabelSet<>(aps, Arrays.copyOf(newWords, length), size - 1, hash - aps.get(id).hashCode());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        int id = aps.idOf(o);
+        return id >= 0 && containsId(id);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<P> iterator() {
+        return new Iterator<P>() {
+            private int next = nextId(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public P next() {
+                if (next < 0)
+                    throw new NoSuchElementException();
+                P p = aps.get(next);
+                next = nextId(next + 1);
+                return p;
+            }
+        };
+    }
+
+    private int nextId(int from) {
+        int w = from >>> 6;
+        if (w >= words.length)
+            return -1;
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof LabelSet && ((LabelSet<?>) o).aps == aps)
+            return Arrays.equals(words, ((LabelSet<?>) o).words);
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // Hands out canonical label sets: equal sets over the same interner are the same object.
+    // The pool holds them weakly, so a set no label uses any more (such as the ones passed
+    // through while propositions are added one at a time) can be collected.
+    public static class Pool<P> {
+
+        private final Interner<P> aps;
+        private final LabelSet<P> empty;
+        private final Map<LabelSet<P>, WeakReference<LabelSet<P>>> canonical = new WeakHashMap<>();
+
+        public Pool(Interner<P> aps) {
+            this.aps = aps;
+            this.empty = new LabelSet<>(aps, NO_WORDS, 0, 0);
+            canonical.put(empty, new WeakReference<>(empty));
+        }
+
+        public LabelSet<P> empty() {
+            return empty;
+        }
+
+        public LabelSet<P> canonical(LabelSet<P> labels) {
+            if (labels.aps != aps)
+                throw new IllegalArgumentException("label set belongs to another pool");
+            WeakReference<LabelSet<P>> ref = canonical.get(labels);
+            LabelSet<P> existing = ref == null ? null : ref.get();
+            if (existing != null)
+                return existing;
+            canonical.put(labels, new WeakReference<>(labels));
+            return labels;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ParserBasedInterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates conditions and actions against a set of defs, memoizing each
+ * condition/action string's answer on its footprint: the values of the
+ * names the string mentions.
+ *
+ * With the parser-based defs, what a string does depends only on those
+ * names, so the defs are asked (and the string parsed) once per distinct
+ * footprint rather than once per state. Nothing is compiled; the answers
+ * still come from the defs. Channel names count as part of a footprint,
+ * since channel contents live in the valuation. Each string's memo holds at
+ * most {@link #MEMO_SIZE} footprints and starts over when it fills up.
+ * Other defs may look at anything, so they are always called through.
+ *
+ * Safe to share between threads exploring in parallel.
+ *
+ * Effects come back as {@link Valuation}s of one shared layout, each sharing
+ * the slots an action didn't touch with the valuation it was applied to.
+ */
+public class MemoizedDefs {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "atomic", "skip", "if", "fi", "do", "od", "true", "false"));
+    private static final Set<Class<?>> LOCAL_DEFS = new HashSet<>(Arrays.asList(
+            ParserBasedActDef.class, ParserBasedInterleavingActDef.class, ParserBasedCondDef.class));
+
+    // footprints remembered per string before its memo is cleared
+    static final int MEMO_SIZE = 1 << 16;
+
+    // stands for a variable missing from a valuation, and for a null effect
+    private static final Object NONE = new Object();
+
+    private final Set<ActionDef> actionDefs;
+    private final Set<ConditionDef> conditionDefs;
+    private final boolean memoize;
+    private final Valuation.Layout layout = new Valuation.Layout();
+
+    private final Map<String, Function<Map<String, Object>, Boolean>> conditions = new ConcurrentHashMap<>();
+    private final Map<Object, Function<Map<String, Object>, Map<String, Object>>> actions = new ConcurrentHashMap<>();
+
+    public MemoizedDefs(Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        this.actionDefs = actionDefs;
+        this.conditionDefs = conditionDefs;
+
+        boolean local = true;
+        for (Object def : actionDefs) {
+            local &= LOCAL_DEFS.contains(def.getClass());
+        }
+        for (Object def : conditionDefs) {
+            local &= LOCAL_DEFS.contains(def.getClass());
+        }
+        this.memoize = local;
+    }
+
+    // the valuation with no variables set, to apply initializations to
+    public Valuation empty() {
+        return layout.empty();
+    }
+
+    public boolean evaluate(Map<String, Object> eval, String condition) {
+        return conditions.computeIfAbsent(condition, this::memoizeCondition).apply(eval);
+    }
+
+    // the defs' effect of action on eval, or null if it can't be taken
+    public Map<String, Object> effect(Map<String, Object> eval, Object action) {
+        return actions.computeIfAbsent(action, this::memoizeAction).apply(eval);
+    }
+
+    private Function<Map<String, Object>, Boolean> memoizeCondition(String condition) {
+        if (!memoize)
+            return eval -> ConditionDef.evaluate(conditionDefs, eval, condition);
+
+        String[] vars = identifiers(condition).toArray(new String[0]);
+        Map<List<Object>, Boolean> memo = new ConcurrentHashMap<>();
+        return eval -> lookup(memo, footprint(eval, vars),
+                () -> ConditionDef.evaluate(conditionDefs, restrict(eval, vars), condition));
+    }
+
+    private Function<Map<String, Object>, Map<String, Object>> memoizeAction(Object action) {
+        if (!memoize) {
+            return eval -> {
+                Map<String, Object> effect = ActionDef.effect(actionDefs, eval, action);
+                return effect == null ? null : layout.of(effect);
+            };
+        }
+
+        String[] vars = identifiers(action.toString()).toArray(new String[0]);
+        Map<List<Object>, Object> memo = new ConcurrentHashMap<>();
+        return eval -> {
+            Object result = lookup(memo, footprint(eval, vars), () -> {
+                Map<String, Object> effect = ActionDef.effect(actionDefs, restrict(eval, vars), action);
+                return effect == null ? NONE : effect;
+            });
+            if (result == NONE)
+                return null;
+
+            // the variables the action didn't mention are carried over as they are
+            Map<String, Object> effect = (Map<String, Object>) result;
+            Valuation.Builder next = layout.of(eval).edit();
+            for (String var : vars) {
+                if (effect.containsKey(var))
+                    next.put(var, effect.get(var));
+                else
+                    next.remove(var);
+            }
+            return next.build();
+        };
+    }
+
+    // the memoized answer for key, asking for it (and making room) if it's new
+    private static <V> V lookup(Map<List<Object>, V> memo, List<Object> key, Supplier<V> answer) {
+        V value = memo.get(key);
+        if (value == null) {
+            value = answer.get();
+            if (memo.size() >= MEMO_SIZE)
+                memo.clear();
+            memo.put(key, value);
+        }
+        return value;
+    }
+
+    private static List<Object> footprint(Map<String, Object> eval, String[] vars) {
+        Object[] values = new Object[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            Object value = eval.get(vars[i]);
+            values[i] = value == null && !eval.containsKey(vars[i]) ? NONE : value;
+        }
+        return Arrays.asList(values);
+    }
+
+    private static Map<String, Object> restrict(Map<String, Object> eval, String[] vars) {
+        Map<String, Object> restricted = new HashMap<>();
+        for (String var : vars) {
+            if (eval.containsKey(var))
+                restricted.put(var, eval.get(var));
+        }
+        return restricted;
+    }
+
+    // the names a condition or action string mentions
+    static Set<String> identifiers(String s) {
+        Set<String> ids = new LinkedHashSet<>();
+        Matcher m = IDENTIFIER.matcher(s);
+        while (m.find()) {
+            if (!KEYWORDS.contains(m.group()))
+                ids.add(m.group());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,395 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaLexer;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser.OptionContext;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser.StmtContext;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.tree.*;
+
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Translates a NanoPromela statement into a program graph. A location is a
+ * statement together with its continuation, the location to go to once the
+ * statement is done (null for the exit). Locations are interned, so each one
+ * is a single small object compared by identity, and the transitions out of a
+ * location are worked out from its statement and continuation alone.
+ *
+ * The graph's locations keep their usual names, the texts of the statements
+ * still to run joined by ";". A name is built once per location, from the
+ * already-built name of its continuation. Those names are what the
+ * {@code ProgramGraph<String, String>} of a NanoPromela program is expected to
+ * have, but a sequence of n statements has n names of up to its whole length,
+ * so with them the translation stays quadratic in time and memory. Only
+ * {@link #withCompactNames()}, which names locations by number, translates in
+ * near-linear time and memory, and is the one to use for large models.
+ *
+ * Statements are first turned into a compact form, bottom-up, by a
+ * parse-tree listener: structure, guards, and the text around a statement's
+ * parts, so each character of the input is kept once. A compound statement's
+ * text is put together from its parts only when a location name needs it.
+ * Given a parse tree, the listener is driven over it without recursion; given
+ * a stream, it listens to the parser itself, over unbuffered streams, and
+ * drops each statement's subtree as soon as the statement is complete, so the
+ * parse tree never holds more than the statements still open.
+ */
+public class NanoPromelaTranslator {
+
+    private static final String LOC_EXIT = "";
+    private static final String ACT_NOTHING = "";
+    private static final String COND_TRUE = "";
+
+    private enum Kind { ATOMIC, IF, DO, SEQ }
+
+    // stands for a statement in the text around it
+    private static final List<String> HOLE = Arrays.asList("", "");
+
+    private static final class Statement {
+        final Kind kind;
+        // the text before, between and after the parts: the whole text of an atomic statement
+        final List<String> glue;
+        // one per option of an if/do
+        final List<String> guards;
+        // the option bodies of an if/do, or the two parts of a sequence
+        final List<Statement> parts;
+
+        Statement(Kind kind, List<String> glue, List<String> guards, List<Statement> parts) {
+            this.kind = kind;
+            this.glue = glue;
+            this.guards = guards;
+            this.parts = parts;
+        }
+
+        // the same text getText() gives, put together without recursion as sequences nest deeply
+        String text() {
+            if (parts.isEmpty())
+                return glue.get(0);
+            StringBuilder text = new StringBuilder();
+            Deque<Object> todo = new ArrayDeque<>();
+            todo.push(this);
+            while (!todo.isEmpty()) {
+                Object top = todo.pop();
+                if (top instanceof String) {
+                    text.append((String) top);
+                    continue;
+                }
+                // pushed backwards, so they come off in order
+                Statement stmt = (Statement) top;
+                todo.push(stmt.glue.get(stmt.parts.size()));
+                for (int i = stmt.parts.size() - 1; i >= 0; i--) {
+                    todo.push(stmt.parts.get(i));
+                    todo.push(stmt.glue.get(i));
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    // builds the compact statements bottom-up, from the exit event of every rule
+    private static final class Builder implements ParseTreeListener {
+
+        private final boolean release;
+        // the text of each node not yet part of a statement, split around the statements under it
+        private final Map<ParseTree, List<String>> texts = new IdentityHashMap<>();
+        private final Map<StmtContext, Statement> statements = new IdentityHashMap<>();
+
+        Builder(boolean release) {
+            this.release = release;
+        }
+
+        Statement statementOf(StmtContext ctx) {
+            return statements.get(ctx);
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            // getText() of ctx, from the children's texts, with a break for each statement under ctx
+            List<String> text = new ArrayList<>();
+            StringBuilder piece = new StringBuilder();
+            if (ctx.children != null) {
+                for (ParseTree child : ctx.children) {
+                    List<String> pieces = child instanceof TerminalNode ? Collections.singletonList(child.getText())
+                            : child instanceof StmtContext ? HOLE : texts.get(child);
+                    piece.append(pieces.get(0));
+                    for (int i = 1; i < pieces.size(); i++) {
+                        text.add(piece.toString());
+                        piece = new StringBuilder(pieces.get(i));
+                    }
+                }
+            }
+            text.add(piece.toString());
+
+            if (ctx instanceof StmtContext) {
+                statements.put((StmtContext) ctx, statement((StmtContext) ctx, text));
+                forget(ctx);
+                if (release)
+                    ctx.children = null;
+            } else {
+                texts.put(ctx, text);
+            }
+        }
+
+        private Statement statement(StmtContext stmt, List<String> glue) {
+            // atomic
+            if (stmt.assstmt() != null || stmt.chanreadstmt() != null || stmt.chanwritestmt() != null
+                    || stmt.atomicstmt() != null || stmt.skipstmt() != null) {
+                return new Statement(Kind.ATOMIC, glue, Collections.emptyList(), Collections.emptyList());
+            }
+
+            else if (stmt.ifstmt() != null || stmt.dostmt() != null) {
+                List<OptionContext> options = stmt.ifstmt() != null ? stmt.ifstmt().option() : stmt.dostmt().option();
+                List<String> guards = new ArrayList<>();
+                List<Statement> bodies = new ArrayList<>();
+                for (OptionContext option : options) {
+                    guards.add(texts.get(option.boolexpr()).get(0));
+                    bodies.add(statements.get(option.stmt()));
+                }
+                return new Statement(stmt.ifstmt() != null ? Kind.IF : Kind.DO, glue, guards, bodies);
+            }
+
+            else {
+                return new Statement(Kind.SEQ, glue, Collections.emptyList(),
+                        Arrays.asList(statements.get(stmt.stmt(0)), statements.get(stmt.stmt(1))));
+            }
+        }
+
+        // drops what was kept for the nodes below ctx, down to (and including) the statements directly under it;
+        // they're in ctx's statement now
+        private void forget(ParserRuleContext ctx) {
+            if (ctx.children == null)
+                return;
+            for (ParseTree child : ctx.children) {
+                texts.remove(child);
+                if (child instanceof StmtContext)
+                    statements.remove(child);
+                else if (child instanceof ParserRuleContext)
+                    forget((ParserRuleContext) child);
+            }
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+        }
+    }
+
+    private static final class Location {
+        final Statement stmt;
+        final Location next;
+        // how many loop bodies the location is in; conditions out of it are parenthesized once per loop
+        final int wraps;
+        // the order in which the location was first met, for compact names
+        int id;
+        String name;
+
+        Location(Statement stmt, Location next, int wraps) {
+            this.stmt = stmt;
+            this.next = next;
+            this.wraps = wraps;
+        }
+
+        // next is interned, so comparing it by identity is enough
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Location))
+                return false;
+            Location other = (Location) o;
+            return stmt == other.stmt && next == other.next && wraps == other.wraps;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(stmt) * 31 + System.identityHashCode(next)) * 31 + wraps;
+        }
+    }
+
+    private static final class Step {
+        final String condition;
+        final String action;
+        final Location to;
+
+        Step(String condition, String action, Location to) {
+            this.condition = condition;
+            this.action = action;
+            this.to = to;
+        }
+    }
+
+    private final Map<Location, Location> locations = new HashMap<>();
+    private boolean compactNames = false;
+
+    /**
+     * Names locations "L0", "L1", ... in the order they're met, instead of by
+     * the statements still to run, so the names take space linear in the
+     * number of locations. Locations that the usual names would merge
+     * (the same statements reached through different continuations) may stay
+     * apart; the graph has the same runs.
+     */
+    public NanoPromelaTranslator withCompactNames() {
+        this.compactNames = true;
+        return this;
+    }
+
+    public ProgramGraph<String, String> translate(StmtContext root, ProgramGraph<String, String> pg) {
+        // the rules are exited children first; the builder needs nothing else
+        Builder builder = new Builder(false);
+        Deque<ParseTree> todo = new ArrayDeque<>();
+        Deque<ParserRuleContext> exits = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            ParseTree node = todo.pop();
+            if (node instanceof ParserRuleContext) {
+                exits.push((ParserRuleContext) node);
+                for (int i = 0; i < node.getChildCount(); i++) {
+                    todo.push(node.getChild(i));
+                }
+            }
+        }
+        while (!exits.isEmpty()) {
+            builder.exitEveryRule(exits.pop());
+        }
+        return translate(builder.statementOf(root), pg);
+    }
+
+    // parses and translates NanoPromela text without keeping its whole parse tree
+    public ProgramGraph<String, String> translate(Reader in, ProgramGraph<String, String> pg) {
+        NanoPromelaLexer lexer = new NanoPromelaLexer(new UnbufferedCharStream(in));
+        // tokens can't refer back into an unbuffered char stream, so they keep their own text
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        NanoPromelaParser parser = new NanoPromelaParser(new UnbufferedTokenStream<>(lexer));
+
+        Builder builder = new Builder(true);
+        parser.addParseListener(builder);
+        return translate(builder.statementOf(parser.spec().stmt()), pg);
+    }
+
+    private ProgramGraph<String, String> translate(Statement root, ProgramGraph<String, String> pg) {
+        Location start = location(root, null, 0);
+        pg.addLocation(name(start));
+
+        Set<Location> expanded = new HashSet<>();
+        Queue<Location> queue = new ArrayDeque<>();
+        expanded.add(start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Location loc = queue.poll();
+            for (Step step : steps(loc.stmt, loc.next, loc.wraps)) {
+                String to = name(step.to);
+                pg.addLocation(to);
+                if (step.to != null && expanded.add(step.to))
+                    queue.add(step.to);
+                pg.addTransition(new PGTransition<>(name(loc), wrap(step.condition, loc.wraps), step.action, to));
+            }
+        }
+
+        pg.setInitial(name(start), true);
+        return pg;
+    }
+
+    // the transitions out of stmt, continuing to next when it's done; stmt is inside wraps loop bodies
+    private List<Step> steps(Statement stmt, Location next, int wraps) {
+        List<Step> steps = new ArrayList<>();
+        switch (stmt.kind) {
+            case ATOMIC:
+                steps.add(new Step(COND_TRUE, stmt.glue.get(0), next));
+                break;
+
+            case IF:
+                for (int i = 0; i < stmt.parts.size(); i++) {
+                    for (Step step : steps(stmt.parts.get(i), next, wraps)) {
+                        steps.add(new Step(guarded(stmt.guards.get(i), step.condition), step.action, step.to));
+                    }
+                }
+                break;
+
+            case DO:
+                // an iteration ends back at the loop's own location; its body is one loop deeper
+                Location again = location(stmt, next, wraps);
+                StringJoiner noGuard = new StringJoiner(" && ", "(", ")");
+                for (int i = 0; i < stmt.parts.size(); i++) {
+                    noGuard.add("!(" + stmt.guards.get(i) + ")");
+                    for (Step step : steps(stmt.parts.get(i), again, wraps + 1)) {
+                        steps.add(new Step(guarded(stmt.guards.get(i), step.condition), step.action, step.to));
+                    }
+                }
+                steps.add(new Step(noGuard.toString(), ACT_NOTHING, next));
+                break;
+
+            case SEQ:
+                // long sequences nest to the left, so their first statement is found with a loop
+                Statement first = stmt;
+                while (first.kind == Kind.SEQ) {
+                    next = location(first.parts.get(1), next, wraps);
+                    first = first.parts.get(0);
+                }
+                steps.addAll(steps(first, next, wraps));
+                break;
+        }
+        return steps;
+    }
+
+    // a sequence is located at its first statement, with the rest as continuation, so a do loop
+    // is the same location whether it is reached first or at the end of an iteration
+    private Location location(Statement stmt, Location next, int wraps) {
+        while (stmt.kind == Kind.SEQ) {
+            next = location(stmt.parts.get(1), next, wraps);
+            stmt = stmt.parts.get(0);
+        }
+        Location loc = new Location(stmt, next, wraps);
+        Location interned = locations.putIfAbsent(loc, loc);
+        if (interned != null)
+            return interned;
+        loc.id = locations.size() - 1;
+        return loc;
+    }
+
+    private String name(Location loc) {
+        if (loc == null)
+            return LOC_EXIT;
+        if (compactNames) {
+            if (loc.name == null)
+                loc.name = "L" + loc.id;
+            return loc.name;
+        }
+
+        // continuation chains can be long, so the unnamed ones are named from the far end with a loop
+        Deque<Location> unnamed = new ArrayDeque<>();
+        for (Location l = loc; l != null && l.name == null; l = l.next) {
+            unnamed.push(l);
+        }
+        while (!unnamed.isEmpty()) {
+            Location l = unnamed.pop();
+            l.name = l.next == null ? l.stmt.text() : l.stmt.text() + ";" + l.next.name;
+        }
+        return loc.name;
+    }
+
+    private static String guarded(String guard, String condition) {
+        if (guard.isEmpty())
+            return condition.isEmpty() ? "" : "(" + condition + ")";
+        if (condition.isEmpty())
+            return "(" + guard + ")";
+        return "(" + guard + ") && (" + condition + ")";
+    }
+
+    private static String wrap(String condition, int times) {
+        for (int i = 0; i < times; i++) {
+            condition = guarded("", condition);
+        }
+        return condition;
+    }
+}
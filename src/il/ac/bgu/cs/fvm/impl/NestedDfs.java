@@ -0,0 +1,115 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.*;
+
+/**
+ * Accepting-cycle detection over an {@link OnTheFlyProduct} by nested DFS, in
+ * the Schwoon-Esparza variant: the outer (blue) search starts an inner (red)
+ * search from each accepting state in post-order, and a cycle is reported as
+ * soon as either search hits a state still on the blue DFS path. Every product
+ * state is visited at most once by each search, so the check is linear in the
+ * size of the reachable product. Both searches run on {@link GraphSearch}.
+ */
+public class NestedDfs<S, Q, A, P> {
+
+    private final OnTheFlyProduct<S, Q, A, P> prod;
+    private final GraphSearch<Pair<S, Q>> blue;
+    private final GraphSearch<Pair<S, Q>> red;
+
+    private List<Pair<S, Q>> prefix;
+    private List<Pair<S, Q>> cycle;
+
+    public NestedDfs(OnTheFlyProduct<S, Q, A, P> prod) {
+        this.prod = prod;
+        this.blue = new GraphSearch<>(prod::post);
+        this.red = new GraphSearch<>(prod::post);
+    }
+
+    /**
+     * Searches for a reachable accepting cycle. If one is found, the result is
+     * a {@link VerificationFailed} whose prefix runs from an initial state up
+     * to an accepting state {@code s} (inclusive), and whose cycle lists the
+     * states that follow {@code s} around the loop, ending with {@code s}.
+     */
+    public VerificationResult<S> check() {
+        boolean completed = blue.dfs(prod.initialStates(), new GraphSearch.Visitor<Pair<S, Q>>() {
+            @Override
+            public boolean edge(Pair<S, Q> from, Pair<S, Q> to) {
+                int onPath = blue.pathIndex(to);
+                if (onPath >= 0 && (prod.isAccepting(from) || prod.isAccepting(to))) {
+                    closeBlueCycle(onPath, to);
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean finish(Pair<S, Q> s) {
+                return !prod.isAccepting(s) || !redSearch(s);
+            }
+        });
+
+        if (completed)
+            return new VerificationSucceeded<>();
+
+        VerificationFailed<S> vf = new VerificationFailed<>();
+        vf.setPrefix(project(prefix));
+        vf.setCycle(project(cycle));
+        return vf;
+    }
+
+    // inner search from an accepting seed (the top of the blue path), through states blue has finished
+    private boolean redSearch(Pair<S, Q> seed) {
+        return !red.dfs(Collections.singleton(seed), new GraphSearch.Visitor<Pair<S, Q>>() {
+            @Override
+            public boolean edge(Pair<S, Q> from, Pair<S, Q> to) {
+                int onPath = blue.pathIndex(to);
+                if (onPath >= 0) {
+                    // seed -> red path -> to, then along the blue path back to the seed
+                    List<Pair<S, Q>> bluePath = blue.currentPath();
+                    List<Pair<S, Q>> redPath = red.currentPath();
+                    prefix = bluePath;
+                    cycle = new ArrayList<>(redPath.subList(1, redPath.size()));
+                    cycle.add(to);
+                    cycle.addAll(bluePath.subList(onPath + 1, bluePath.size()));
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean admit(Pair<S, Q> from, Pair<S, Q> to) {
+                return blue.isVisited(to);
+            }
+        });
+    }
+
+    // the top of the blue path has an edge back to the path state at index target
+    private void closeBlueCycle(int target, Pair<S, Q> next) {
+        List<Pair<S, Q>> bluePath = blue.currentPath();
+        int top = bluePath.size() - 1;
+        if (prod.isAccepting(bluePath.get(top))) {
+            prefix = bluePath;
+            cycle = new ArrayList<>();
+            cycle.add(next);
+            cycle.addAll(bluePath.subList(target + 1, top + 1));
+        } else {
+            prefix = new ArrayList<>(bluePath.subList(0, target + 1));
+            cycle = new ArrayList<>(bluePath.subList(target + 1, top + 1));
+            cycle.add(next);
+        }
+    }
+
+    static <S, Q> List<S> project(List<Pair<S, Q>> states) {
+        List<S> projected = new LinkedList<>();
+        for (Pair<S, Q> p : states) {
+            projected.add(p.first);
+        }
+        return projected;
+    }
+}
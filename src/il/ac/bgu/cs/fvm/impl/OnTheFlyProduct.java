@@ -0,0 +1,121 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * The product of a transition system and an automaton, explored on the fly.
+ * Product states are created only when asked for as successors, so walking the
+ * product from {@link #initialStates()} touches only the reachable pairs, never
+ * the full {@code S x Q}. Once constructed it is only read, so several
+ * threads may walk it at the same time.
+ */
+public class OnTheFlyProduct<S, Q, A, P> {
+
+    private final TransitionSystem<S, A, P> ts;
+    private final AutomatonIndex<Q, P> aut;
+    private final Set<Q> accepting;
+    private final Function<S, Collection<Transition<S, A>>> outgoing;
+    private final Function<S, Set<P>> label;
+
+    public OnTheFlyProduct(TransitionSystem<S, A, P> ts, Automaton<Q, P> aut) {
+        this.ts = ts;
+        this.aut = new AutomatonIndex<>(aut);
+        this.accepting = new HashSet<>(aut.getAcceptingStates());
+        this.outgoing = TransitionSystemImpl.outgoingTransitions(ts);
+        this.label = TransitionSystemImpl.labels(ts);
+    }
+
+    public Set<Pair<S, Q>> initialStates() {
+        Set<Pair<S, Q>> inits = new HashSet<>();
+        for (S s : ts.getInitialStates()) {
+            for (Q q : aut.getAutomaton().getInitialStates()) {
+                for (Q next : aut.nextStates(q, label.apply(s))) {
+                    inits.add(new Pair<>(s, next));
+                }
+            }
+        }
+        return inits;
+    }
+
+    public List<Transition<Pair<S, Q>, A>> outgoing(Pair<S, Q> state) {
+        List<Transition<Pair<S, Q>, A>> out = new ArrayList<>();
+        for (Transition<S, A> tran : outgoing.apply(state.first)) {
+            for (Q next : aut.nextStates(state.second, label.apply(tran.getTo()))) {
+                out.add(new Transition<>(state, tran.getAction(), new Pair<>(tran.getTo(), next)));
+            }
+        }
+        return out;
+    }
+
+    public List<Pair<S, Q>> post(Pair<S, Q> state) {
+        List<Pair<S, Q>> post = new ArrayList<>();
+        for (Transition<S, A> tran : outgoing.apply(state.first)) {
+            for (Q next : aut.nextStates(state.second, label.apply(tran.getTo()))) {
+                post.add(new Pair<>(tran.getTo(), next));
+            }
+        }
+        return post;
+    }
+
+    public boolean isAccepting(Pair<S, Q> state) {
+        return accepting.contains(state.second);
+    }
+
+    // materializes the reachable part of the product; each state is labeled with its automaton state
+    public TransitionSystem<Pair<S, Q>, A, Q> toTransitionSystem() {
+        TransitionSystem<Pair<S, Q>, A, Q> tsProd = new TransitionSystemImpl<>();
+        tsProd.addAllActions(ts.getActions());
+
+        Queue<Pair<S, Q>> frontier = new ArrayDeque<>();
+        for (Pair<S, Q> init : initialStates()) {
+            addProductState(tsProd, init);
+            tsProd.setInitial(init, true);
+            frontier.add(init);
+        }
+
+        while (!frontier.isEmpty()) {
+            Pair<S, Q> state = frontier.poll();
+            for (Transition<Pair<S, Q>, A> tran : outgoing(state)) {
+                if (!tsProd.getStates().contains(tran.getTo())) {
+                    addProductState(tsProd, tran.getTo());
+                    frontier.add(tran.getTo());
+                }
+                tsProd.addTransition(tran);
+            }
+        }
+
+        return tsProd;
+    }
+
+    // the same transition system, explored by a ParallelBfs on the given pool
+    public TransitionSystem<Pair<S, Q>, A, Q> toTransitionSystem(ForkJoinPool pool) {
+        TransitionSystem<Pair<S, Q>, A, Q> tsProd = new TransitionSystemImpl<>();
+        tsProd.addAllActions(ts.getActions());
+
+        Set<Pair<S, Q>> inits = initialStates();
+        ParallelBfs<Pair<S, Q>, A> bfs = new ParallelBfs<>(this::outgoing).run(pool, inits);
+        for (Pair<S, Q> state : bfs.getStates()) {
+            addProductState(tsProd, state);
+        }
+        for (Pair<S, Q> init : inits) {
+            tsProd.setInitial(init, true);
+        }
+        for (Transition<Pair<S, Q>, A> tran : bfs.getTransitions()) {
+            tsProd.addTransition(tran);
+        }
+        return tsProd;
+    }
+
+    private void addProductState(TransitionSystem<Pair<S, Q>, A, Q> tsProd, Pair<S, Q> state) {
+        tsProd.addState(state);
+        tsProd.addAtomicProposition(state.second);
+        tsProd.addToLabel(state, state.second);
+    }
+}
@@ -0,0 +1,289 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+
+import java.util.*;
+
+/**
+ * A circuit whose inputs, registers and outputs are packed into {@code long}
+ * words, one bit per name in a fixed {@link Layout}. Stepping and output
+ * computation take and return words; {@code Map} views of a word are made
+ * only when a caller needs one (e.g. as part of a transition-system state).
+ * A view is equal, and hashes alike, to the ordinary map with the same
+ * entries, and two views of one layout compare by their words.
+ *
+ * The circuit itself works on maps, so each step hands it the same two
+ * scratch views, pointed at the current words, and packs what it returns;
+ * what the circuit allocates for its result is the only allocation left.
+ * Because of the scratch views a PackedCircuit is not thread-safe.
+ *
+ * Only circuits whose inputs, registers and outputs each have at most 64
+ * names can be packed; see {@link #fits(Circuit)}.
+ */
+public class PackedCircuit {
+
+    /** Name to bit, for up to 64 names. */
+    public static final class Layout {
+
+        private final String[] names;
+        private final Map<String, Integer> bits = new HashMap<>();
+        // the Map-contract hash of each entry, for either value
+        private final int[] trueHash;
+        private final int[] falseHash;
+
+        Layout(Set<String> names) {
+            if (names.size() > Long.SIZE)
+                throw new IllegalArgumentException("more than " + Long.SIZE + " names: " + names);
+            this.names = names.toArray(new String[0]);
+            this.trueHash = new int[this.names.length];
+            this.falseHash = new int[this.names.length];
+            for (int i = 0; i < this.names.length; i++) {
+                bits.put(this.names[i], i);
+                trueHash[i] = this.names[i].hashCode() ^ Boolean.hashCode(true);
+                falseHash[i] = this.names[i].hashCode() ^ Boolean.hashCode(false);
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String name(int bit) {
+            return names[bit];
+        }
+
+        // the word of a map over these names (missing or false entries are 0 bits)
+        public long pack(Map<String, Boolean> values) {
+            if (values instanceof View && ((View) values).layout == this)
+                return ((View) values).word;
+            long word = 0;
+            for (int i = 0; i < names.length; i++) {
+                if (Boolean.TRUE.equals(values.get(names[i])))
+                    word |= 1L << i;
+            }
+            return word;
+        }
+
+        public Map<String, Boolean> view(long word) {
+            return new View(this, word);
+        }
+    }
+
+    private static final class View extends AbstractMap<String, Boolean> {
+
+        private final Layout layout;
+        // only a scratch view's word is ever reset
+        private long word;
+        private int hash;
+        private boolean hashed;
+
+        View(Layout layout, long word) {
+            this.layout = layout;
+            this.word = word;
+        }
+
+        View reset(long word) {
+            this.word = word;
+            this.hashed = false;
+            return this;
+        }
+
+        @Override
+        public Boolean get(Object key) {
+            Integer bit = layout.bits.get(key);
+            return bit == null ? null : (word & (1L << bit)) != 0;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return layout.bits.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return layout.names.length;
+        }
+
+        @Override
+        public Set<Entry<String, Boolean>> entrySet() {
+            return new AbstractSet<Entry<String, Boolean>>() {
+                @Override
+                public Iterator<Entry<String, Boolean>> iterator() {
+                    return new Iterator<Entry<String, Boolean>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < layout.names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Boolean> next() {
+                            if (!hasNext())
+                                throw new NoSuchElementException();
+                            Entry<String, Boolean> e = new SimpleImmutableEntry<>(layout.names[next], (word & (1L << next)) != 0);
+                            next++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return layout.names.length;
+                }
+            };
+        }
+
+        @Override
+        public int hashCode() {
+            if (!hashed) {
+                int h = 0;
+                for (int i = 0; i < layout.names.length; i++) {
+                    h += (word & (1L << i)) != 0 ? layout.trueHash[i] : layout.falseHash[i];
+                }
+                hash = h;
+                hashed = true;
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof View && ((View) o).layout == layout)
+                return ((View) o).word == word;
+            return super.equals(o);
+        }
+    }
+
+    private final Circuit c;
+    private final Layout inputs;
+    private final Layout registers;
+    private final Layout outputs;
+    private final View inputsScratch;
+    private final View registersScratch;
+    // whether some name is in more than one layout, so labels must drop repeats
+    private final boolean overlapping;
+
+    public PackedCircuit(Circuit c) {
+        this.c = c;
+        this.inputs = new Layout(c.getInputPortNames());
+        this.registers = new Layout(c.getRegisterNames());
+        this.outputs = new Layout(c.getOutputPortNames());
+        this.inputsScratch = new View(inputs, 0);
+        this.registersScratch = new View(registers, 0);
+
+        Set<String> all = new HashSet<>(c.getInputPortNames());
+        all.addAll(c.getRegisterNames());
+        all.addAll(c.getOutputPortNames());
+        this.overlapping = all.size() < inputs.size() + registers.size() + outputs.size();
+    }
+
+    // whether c's inputs, registers and outputs each fit in a word
+    public static boolean fits(Circuit c) {
+        return c.getInputPortNames().size() <= Long.SIZE
+                && c.getRegisterNames().size() <= Long.SIZE
+                && c.getOutputPortNames().size() <= Long.SIZE;
+    }
+
+    public Layout getInputs() {
+        return inputs;
+    }
+
+    public Layout getRegisters() {
+        return registers;
+    }
+
+    public Layout getOutputs() {
+        return outputs;
+    }
+
+    // the register word after a step on the given input and register words
+    public long step(long in, long regs) {
+        return registers.pack(c.updateRegisters(inputsScratch.reset(in), registersScratch.reset(regs)));
+    }
+
+    public long outputs(long in, long regs) {
+        return outputs.pack(c.computeOutputs(inputsScratch.reset(in), registersScratch.reset(regs)));
+    }
+
+    /**
+     * The inputs, registers and outputs that are on in a state, as a read-only
+     * set over the three words, in that order.
+     */
+    public Set<String> label(long in, long regs) {
+        return new Label(in, regs, outputs(in, regs));
+    }
+
+    private final class Label extends AbstractSet<String> {
+
+        private final long[] words;
+
+        Label(long in, long regs, long outs) {
+            this.words = new long[]{in, regs, outs};
+        }
+
+        private Layout layout(int i) {
+            return i == 0 ? inputs : i == 1 ? registers : outputs;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            // a name may be in more than one layout
+            for (int i = 0; i < words.length; i++) {
+                Integer bit = layout(i).bits.get(o);
+                if (bit != null && (words[i] & (1L << bit)) != 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator<String> it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private final Set<String> seen = overlapping ? new HashSet<>() : null;
+                private int word = 0;
+                private long rest = words[0];
+                private String next = advance();
+
+                private String advance() {
+                    while (true) {
+                        while (rest == 0) {
+                            if (++word == words.length)
+                                return null;
+                            rest = words[word];
+                        }
+                        int bit = Long.numberOfTrailingZeros(rest);
+                        rest &= rest - 1;
+                        String name = layout(word).name(bit);
+                        if (seen == null || seen.add(name))
+                            return name;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (next == null)
+                        throw new NoSuchElementException();
+                    String name = next;
+                    next = advance();
+                    return name;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Level-synchronous breadth-first exploration on a {@link ForkJoinPool}. The
+ * states of each BFS level are expanded by the pool's workers (idle workers
+ * steal the rest of the level), new states are claimed in a concurrent
+ * visited set, and the results are handed back to the calling thread, so
+ * whatever is built from them is built sequentially. The sets of states and
+ * transitions found don't depend on the number of threads; only the order in
+ * which states of the same level are listed may.
+ *
+ * The successor function is called from several threads at once.
+ */
+public class ParallelBfs<S, A> {
+
+    private final Function<S, ? extends Collection<Transition<S, A>>> outgoing;
+
+    private final List<S> states = new ArrayList<>();
+    private final List<Transition<S, A>> transitions = new ArrayList<>();
+
+    public ParallelBfs(Function<S, ? extends Collection<Transition<S, A>>> outgoing) {
+        this.outgoing = outgoing;
+    }
+
+    public ParallelBfs<S, A> run(ForkJoinPool pool, Collection<S> roots) {
+        Set<S> visited = ConcurrentHashMap.newKeySet();
+        List<S> frontier = new ArrayList<>();
+        for (S root : roots) {
+            if (visited.add(root))
+                frontier.add(root);
+        }
+        states.addAll(frontier);
+
+        while (!frontier.isEmpty()) {
+            List<S> level = frontier;
+            List<Step<S, A>> steps = pool.invoke(ForkJoinTask.adapt(() -> level.parallelStream()
+                    .map(state -> {
+                        Step<S, A> step = new Step<>(outgoing.apply(state));
+                        for (Transition<S, A> tran : step.out) {
+                            if (visited.add(tran.getTo()))
+                                step.fresh.add(tran.getTo());
+                        }
+                        return step;
+                    })
+                    .collect(Collectors.toList())));
+
+            frontier = new ArrayList<>();
+            for (Step<S, A> step : steps) {
+                transitions.addAll(step.out);
+                frontier.addAll(step.fresh);
+            }
+            states.addAll(frontier);
+        }
+        return this;
+    }
+
+    // every state found, roots first, level by level
+    public List<S> getStates() {
+        return states;
+    }
+
+    public List<Transition<S, A>> getTransitions() {
+        return transitions;
+    }
+
+    // what one worker found from one state: its transitions, and the targets it claimed first
+    private static class Step<S, A> {
+        final Collection<Transition<S, A>> out;
+        final List<S> fresh = new ArrayList<>();
+
+        Step(Collection<Transition<S, A>> out) {
+            this.out = out;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accepting-cycle detection over an {@link OnTheFlyProduct} with several
+ * threads, by CNDFS (Evangelista, Laarman, Petrucci and van de Pol). Each
+ * worker runs its own nested DFS from the initial states, taking successors
+ * in its own random order, and the workers share which states are blue
+ * (finished by some outer search) and red (finished by some inner search), so
+ * that each one skips what the others already covered. Cycles are detected as
+ * in {@link NestedDfs}, against the worker's own blue path; the first one found
+ * stops all workers. The answer doesn't depend on the number of threads,
+ * though the counterexample may.
+ */
+public class ParallelNestedDfs<S, Q, A, P> {
+
+    private final OnTheFlyProduct<S, Q, A, P> prod;
+    private final Set<Pair<S, Q>> blue = ConcurrentHashMap.newKeySet();
+    private final Set<Pair<S, Q>> red = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<VerificationFailed<S>> found = new AtomicReference<>();
+    // notified whenever states turn red or a counterexample is found
+    private final Object redChanged = new Object();
+
+    public ParallelNestedDfs(OnTheFlyProduct<S, Q, A, P> prod) {
+        this.prod = prod;
+    }
+
+    /**
+     * Searches for a reachable accepting cycle with one worker per thread of
+     * the pool. A counterexample has the same shape as the one of
+     * {@link NestedDfs#check()}.
+     */
+    public VerificationResult<S> check(ForkJoinPool pool) {
+        List<Pair<S, Q>> inits = new ArrayList<>(prod.initialStates());
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, pool.getParallelism()); i++) {
+            workers.add(pool.submit(new Worker(i, inits)));
+        }
+        for (ForkJoinTask<?> worker : workers) {
+            worker.join();
+        }
+
+        VerificationFailed<S> vf = found.get();
+        return vf == null ? new VerificationSucceeded<>() : vf;
+    }
+
+    private void report(List<Pair<S, Q>> prefix, List<Pair<S, Q>> cycle) {
+        VerificationFailed<S> vf = new VerificationFailed<>();
+        vf.setPrefix(NestedDfs.project(prefix));
+        vf.setCycle(NestedDfs.project(cycle));
+        found.compareAndSet(null, vf);
+        synchronized (redChanged) {
+            redChanged.notifyAll();
+        }
+    }
+
+    // blocks until all of states are red or a counterexample is found, letting the pool run other workers meanwhile
+    private void awaitRed(List<Pair<S, Q>> states) {
+        ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean isReleasable() {
+                return found.get() != null || red.containsAll(states);
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (redChanged) {
+                    while (!isReleasable()) {
+                        redChanged.wait();
+                    }
+                }
+                return true;
+            }
+        };
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        // worker 0 keeps the product's own order, the others shuffle
+        private final Random random;
+        private final List<Pair<S, Q>> roots;
+        private final GraphSearch<Pair<S, Q>> blueSearch = new GraphSearch<>(this::post);
+
+        Worker(int id, List<Pair<S, Q>> inits) {
+            this.random = id == 0 ? null : new Random(id);
+            this.roots = shuffled(new ArrayList<>(inits));
+        }
+
+        private List<Pair<S, Q>> post(Pair<S, Q> state) {
+            return shuffled(prod.post(state));
+        }
+
+        private List<Pair<S, Q>> shuffled(List<Pair<S, Q>> states) {
+            if (random != null)
+                Collections.shuffle(states, random);
+            return states;
+        }
+
+        @Override
+        public void run() {
+            // roots are checked lazily, as other workers may finish them meanwhile
+            Iterable<Pair<S, Q>> unfinished = () -> roots.stream().filter(root -> !blue.contains(root)).iterator();
+            blueSearch.dfs(unfinished, new GraphSearch.Visitor<Pair<S, Q>>() {
+                @Override
+                public boolean edge(Pair<S, Q> from, Pair<S, Q> to) {
+                    if (found.get() != null)
+                        return false;
+                    int onPath = blueSearch.pathIndex(to);
+                    if (onPath >= 0 && (prod.isAccepting(from) || prod.isAccepting(to))) {
+                        closeBlueCycle(onPath, to);
+                        return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean admit(Pair<S, Q> from, Pair<S, Q> to) {
+                    return !blue.contains(to);
+                }
+
+                @Override
+                public boolean finish(Pair<S, Q> s) {
+                    blue.add(s);
+                    return !prod.isAccepting(s) || !redSearch(s);
+                }
+            });
+        }
+
+        // inner search from an accepting seed; returns true if this worker should stop
+        private boolean redSearch(Pair<S, Q> seed) {
+            GraphSearch<Pair<S, Q>> inner = new GraphSearch<>(this::post);
+            boolean completed = inner.dfs(Collections.singleton(seed), new GraphSearch.Visitor<Pair<S, Q>>() {
+                @Override
+                public boolean edge(Pair<S, Q> from, Pair<S, Q> to) {
+                    if (found.get() != null)
+                        return false;
+                    int onPath = blueSearch.pathIndex(to);
+                    if (onPath >= 0) {
+                        // seed -> red path -> to, then along the blue path back to the seed
+                        List<Pair<S, Q>> bluePath = blueSearch.currentPath();
+                        List<Pair<S, Q>> redPath = inner.currentPath();
+                        List<Pair<S, Q>> cycle = new ArrayList<>(redPath.subList(1, redPath.size()));
+                        cycle.add(to);
+                        cycle.addAll(bluePath.subList(onPath + 1, bluePath.size()));
+                        report(bluePath, cycle);
+                        return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean admit(Pair<S, Q> from, Pair<S, Q> to) {
+                    return !red.contains(to);
+                }
+            });
+            if (!completed)
+                return true;
+
+            // accepting states met here that another worker's inner search is still on must turn red first
+            List<Pair<S, Q>> pending = new ArrayList<>();
+            for (Pair<S, Q> s : inner.visited()) {
+                if (!s.equals(seed) && prod.isAccepting(s) && !red.contains(s))
+                    pending.add(s);
+            }
+            if (!pending.isEmpty()) {
+                awaitRed(pending);
+                if (found.get() != null || Thread.currentThread().isInterrupted())
+                    return true;
+            }
+            red.addAll(inner.visited());
+            synchronized (redChanged) {
+                redChanged.notifyAll();
+            }
+            return false;
+        }
+
+        // the top of the blue path has an edge back to the path state at index target
+        private void closeBlueCycle(int target, Pair<S, Q> next) {
+            List<Pair<S, Q>> bluePath = blueSearch.currentPath();
+            int top = bluePath.size() - 1;
+            List<Pair<S, Q>> cycle;
+            if (prod.isAccepting(bluePath.get(top))) {
+                cycle = new ArrayList<>();
+                cycle.add(next);
+                cycle.addAll(bluePath.subList(target + 1, top + 1));
+                report(bluePath, cycle);
+            } else {
+                cycle = new ArrayList<>(bluePath.subList(target + 1, top + 1));
+                cycle.add(next);
+                report(bluePath.subList(0, target + 1), cycle);
+            }
+        }
+    }
+}
@@ -4,7 +4,13 @@ import il.ac.bgu.cs.fvm.programgraph.PGTransition;
 import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
 
 import java.util.*;
+import java.util.function.Function;
 
+/**
+ * Like {@link TransitionSystemImpl}, the getters hand out read-only views that
+ * follow changes; every change goes through the methods here, so the
+ * transition indexes stay in step.
+ */
 public class ProgramGraphImpl<L, A> implements ProgramGraph {
 
     String name;
@@ -13,12 +19,18 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph {
     Set<L> initLocs;
     Set<PGTransition> trans;
 
+    // transitions by source and target location; empty buckets are dropped
+    Map<L, Set<PGTransition>> outgoing;
+    Map<L, Set<PGTransition>> incoming;
+
     public ProgramGraphImpl(){
         name = "";
         initVars = new HashSet<>();
         locs = new HashSet<>();
         initLocs = new HashSet<>();
         trans = new HashSet<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
     }
 
     @Override
@@ -48,23 +60,26 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph {
     @Override
     public void addTransition(PGTransition t) {
         if (locs.contains(t.getFrom()) && locs.contains(t.getTo()) ) {
-            trans.add(t);
+            if (trans.add(t)) {
+                outgoing.computeIfAbsent((L) t.getFrom(), k -> new HashSet<>()).add(t);
+                incoming.computeIfAbsent((L) t.getTo(), k -> new HashSet<>()).add(t);
+            }
         }
     }
 
     @Override
     public Set<List<String>> getInitalizations() {
-        return initVars;
+        return Collections.unmodifiableSet(initVars);
     }
 
     @Override
     public Set getInitialLocations() {
-        return initLocs;
+        return Collections.unmodifiableSet(initLocs);
     }
 
     @Override
     public Set getLocations() {
-        return locs;
+        return Collections.unmodifiableSet(locs);
     }
 
     @Override
@@ -74,22 +89,54 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph {
 
     @Override
     public Set<PGTransition> getTransitions() {
-        return trans;
+        return Collections.unmodifiableSet(trans);
+    }
+
+    // the transitions leaving location
+    public Set<PGTransition> getTransitionsFrom(Object location) {
+        Set<PGTransition> out = outgoing.get(location);
+        return out == null ? Collections.emptySet() : Collections.unmodifiableSet(out);
     }
 
     @Override
     public void removeLocation(Object o) {
-        for(PGTransition t : trans){
-            if (t.getFrom().equals(o) || t.getTo().equals(o)){
-                removeTransition(t);
-            }
+        List<PGTransition> attached = new ArrayList<>(getTransitionsFrom(o));
+        attached.addAll(incoming.getOrDefault(o, Collections.emptySet()));
+        for (PGTransition t : attached) {
+            removeTransition(t);
         }
         locs.remove((L)o);
     }
 
     @Override
     public void removeTransition(PGTransition t) {
-        trans.remove(t);
+        if (trans.remove(t)) {
+            unindex(outgoing, t.getFrom(), t);
+            unindex(incoming, t.getTo(), t);
+        }
+    }
+
+    private void unindex(Map<L, Set<PGTransition>> index, Object location, PGTransition t) {
+        Set<PGTransition> bucket = index.get(location);
+        if (bucket != null) {
+            bucket.remove(t);
+            if (bucket.isEmpty())
+                index.remove(location);
+        }
+    }
+
+    // getTransitionsFrom for any program graph, indexing it once if it isn't a ProgramGraphImpl
+    public static <L, A> Function<L, Collection<PGTransition<L, A>>> transitionsFrom(ProgramGraph<L, A> pg) {
+        if (pg instanceof ProgramGraphImpl) {
+            ProgramGraphImpl<L, A> impl = (ProgramGraphImpl<L, A>) pg;
+            return l -> (Collection) impl.getTransitionsFrom(l);
+        }
+
+        Map<L, List<PGTransition<L, A>>> outgoing = new HashMap<>();
+        for (PGTransition<L, A> tran : pg.getTransitions()) {
+            outgoing.computeIfAbsent(tran.getFrom(), k -> new ArrayList<>()).add(tran);
+        }
+        return l -> outgoing.getOrDefault(l, Collections.emptyList());
     }
 
     @Override
@@ -0,0 +1,149 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * The reachable part of a program graph's transition system (states are a
+ * location with a variable valuation), explored forward from the initial
+ * states. Exploration is either a plain BFS, or a {@link ParallelBfs} on a
+ * given {@link ForkJoinPool}, after which the transition system is put
+ * together on the calling thread. Both produce the same states, transitions
+ * and initial states, whatever the number of threads.
+ *
+ * Each state is labeled as it is added: with its location (or each location,
+ * when the location is a list of them) and with a {@code "var = value"}
+ * proposition per variable.
+ */
+public class ProgramGraphUnfolding<L, A> {
+
+    private final ProgramGraph<L, A> pg;
+    private final MemoizedDefs defs;
+    private final Function<L, Collection<PGTransition<L, A>>> transitionsFrom;
+    private final Propositions propositions = new Propositions();
+    // a graph without transitions has never had its states labeled with their variables
+    private final boolean labelVariables;
+
+    public ProgramGraphUnfolding(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        this.pg = pg;
+        this.defs = new MemoizedDefs(actionDefs, conditionDefs);
+        this.transitionsFrom = ProgramGraphImpl.transitionsFrom(pg);
+        this.labelVariables = !pg.getTransitions().isEmpty();
+    }
+
+    public Set<Pair<L, Map<String, Object>>> initialStates() {
+        Set<Map<String, Object>> evals = new LinkedHashSet<>();
+        for (List<String> list : pg.getInitalizations()) {
+            Map<String, Object> eval = defs.empty();
+            for (String action : list) {
+                eval = defs.effect(eval, action);
+            }
+            evals.add(eval);
+        }
+        if (evals.isEmpty()) {
+            evals.add(defs.empty());
+        }
+
+        Set<Pair<L, Map<String, Object>>> inits = new LinkedHashSet<>();
+        for (L init : pg.getInitialLocations()) {
+            for (Map<String, Object> eval : evals) {
+                inits.add(new Pair<>(init, eval));
+            }
+        }
+        return inits;
+    }
+
+    public List<Transition<Pair<L, Map<String, Object>>, A>> outgoing(Pair<L, Map<String, Object>> state) {
+        List<Transition<Pair<L, Map<String, Object>>, A>> out = new ArrayList<>();
+        for (PGTransition<L, A> tran : transitionsFrom.apply(state.first)) {
+            if (defs.evaluate(state.second, tran.getCondition())) {
+                Map<String, Object> effect = defs.effect(state.second, tran.getAction());
+                if (effect != null)
+                    out.add(new Transition<>(state, tran.getAction(), new Pair<>(tran.getTo(), effect)));
+            }
+        }
+        return out;
+    }
+
+    public TransitionSystem<Pair<L, Map<String, Object>>, A, String> unfold() {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = start();
+
+        Queue<Pair<L, Map<String, Object>>> states = new ArrayDeque<>(ts.getStates());
+        while (!states.isEmpty()) {
+            Pair<L, Map<String, Object>> state = states.poll();
+            for (Transition<Pair<L, Map<String, Object>>, A> tran : outgoing(state)) {
+                if (!ts.getStates().contains(tran.getTo())) {
+                    addState(ts, tran.getTo());
+                    states.add(tran.getTo());
+                }
+                ts.addTransition(tran);
+            }
+        }
+        return ts;
+    }
+
+    public TransitionSystem<Pair<L, Map<String, Object>>, A, String> unfold(ForkJoinPool pool) {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = start();
+
+        ParallelBfs<Pair<L, Map<String, Object>>, A> bfs = new ParallelBfs<>(this::outgoing).run(pool, ts.getStates());
+        for (Pair<L, Map<String, Object>> state : bfs.getStates()) {
+            addState(ts, state);
+        }
+        for (Transition<Pair<L, Map<String, Object>>, A> tran : bfs.getTransitions()) {
+            ts.addTransition(tran);
+        }
+        return ts;
+    }
+
+    // a transition system holding the actions and the initial states
+    private TransitionSystem<Pair<L, Map<String, Object>>, A, String> start() {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = new TransitionSystemImpl<>();
+        for (PGTransition<L, A> tran : pg.getTransitions()) {
+            ts.addAction(tran.getAction());
+        }
+        for (Pair<L, Map<String, Object>> init : initialStates()) {
+            addState(ts, init);
+            ts.setInitial(init, true);
+            for (Map.Entry<String, Object> var : init.second.entrySet()) {
+                ts.addAtomicProposition(propositions.of(var.getKey(), var.getValue()));
+            }
+        }
+        return ts;
+    }
+
+    // the propositions a state is labeled with in the unfolded transition system
+    public Set<String> label(Pair<L, Map<String, Object>> state) {
+        Set<String> label = new LinkedHashSet<>();
+        if (state.first instanceof ArrayList<?>) {
+            for (Object l : (ArrayList<?>) state.first) {
+                label.add(l.toString());
+            }
+        } else {
+            label.add(state.first.toString());
+        }
+
+        if (labelVariables) {
+            for (Map.Entry<String, Object> var : state.second.entrySet()) {
+                label.add(propositions.of(var.getKey(), var.getValue()));
+            }
+        }
+        return label;
+    }
+
+    private void addState(TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts, Pair<L, Map<String, Object>> state) {
+        ts.addState(state);
+        for (String ap : label(state)) {
+            ts.addAtomicProposition(ap);
+            ts.addToLabel(state, ap);
+        }
+    }
+}
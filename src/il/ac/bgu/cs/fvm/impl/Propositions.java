@@ -0,0 +1,20 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code "var = value"} atomic propositions that label states with their
+ * variable values. Each distinct string is built once and then handed out
+ * again, so labeling many states costs a couple of lookups per variable and
+ * the labels share their strings.
+ */
+public class Propositions {
+
+    private final Map<String, Map<Object, String>> byName = new HashMap<>();
+
+    public String of(String name, Object value) {
+        return byName.computeIfAbsent(name, k -> new HashMap<>())
+                .computeIfAbsent(value, k -> name + " = " + value);
+    }
+}
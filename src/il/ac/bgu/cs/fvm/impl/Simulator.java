@@ -0,0 +1,245 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Random simulation of a model whose state space is too big to unfold: runs
+ * start at a random initial state and take random transitions, and each state
+ * met is checked against a predicate on its label. Nothing is remembered
+ * between runs, and within a run only the run itself is kept, for the witness.
+ *
+ * Models go through the same semantics as the facade's unfolding
+ * ({@link ProgramGraphUnfolding} for program graphs, {@link PackedCircuit} for
+ * circuits, as in {@link CircuitUnfolding}), so states, actions and labels are
+ * those of the transition system {@link FvmFacadeImpl} would build, and a
+ * witness is an initial execution fragment of it (see
+ * {@link #findViolatingFragment}). Circuits are run on their packed words;
+ * states and actions are made only for a witness. A simulator is not
+ * thread-safe.
+ */
+public class Simulator<S, A, P> {
+
+    // one run at a time, kept in whatever form suits the model
+    private interface Runner<S, A, P> {
+
+        // starts a new run, or returns false if there is no initial state
+        boolean start(Random random);
+
+        // takes a random transition, or returns false if there is none
+        boolean step(Random random);
+
+        // the label of the state the run is at
+        Set<P> label();
+
+        // the run so far
+        AlternatingSequence<S, A> run();
+    }
+
+    private final Runner<S, A, P> runner;
+
+    private Random random = new Random();
+
+    private Simulator(Runner<S, A, P> runner) {
+        this.runner = runner;
+    }
+
+    public static Simulator<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, String> of(Circuit c) {
+        return new Simulator<>(PackedCircuit.fits(c) ? new CircuitRunner(new PackedCircuit(c)) : largeCircuitRunner(c));
+    }
+
+    public static <L, A> Simulator<Pair<L, Map<String, Object>>, A, String> of(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        ProgramGraphUnfolding<L, A> unfolding = new ProgramGraphUnfolding<>(pg, actionDefs, conditionDefs);
+        List<Pair<L, Map<String, Object>>> inits = new ArrayList<>(unfolding.initialStates());
+        return new Simulator<>(new ObjectRunner<>(
+                random -> inits.isEmpty() ? null : inits.get(random.nextInt(inits.size())),
+                (state, random) -> {
+                    List<Transition<Pair<L, Map<String, Object>>, A>> out = unfolding.outgoing(state);
+                    return out.isEmpty() ? null : out.get(random.nextInt(out.size()));
+                },
+                unfolding::label));
+    }
+
+    // circuits too wide to pack are run on maps, as CircuitUnfolding unfolds them
+    private static Runner<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, String> largeCircuitRunner(Circuit c) {
+        Map<String, Boolean> off = new HashMap<>();
+        for (String reg : c.getRegisterNames()) {
+            off.put(reg, false);
+        }
+        Function<Random, Map<String, Boolean>> inputs = random -> {
+            Map<String, Boolean> in = new HashMap<>();
+            for (String input : c.getInputPortNames()) {
+                in.put(input, random.nextBoolean());
+            }
+            return in;
+        };
+        return new ObjectRunner<>(
+                random -> new Pair<>(inputs.apply(random), off),
+                (state, random) -> {
+                    Map<String, Boolean> act = inputs.apply(random);
+                    return new Transition<>(state, act, new Pair<>(act, c.updateRegisters(state.first, state.second)));
+                },
+                state -> {
+                    Set<String> label = new HashSet<>();
+                    for (Map<String, Boolean> values : Arrays.asList(state.first, state.second, c.computeOutputs(state.first, state.second))) {
+                        for (Map.Entry<String, Boolean> value : values.entrySet()) {
+                            if (Boolean.TRUE.equals(value.getValue()))
+                                label.add(value.getKey());
+                        }
+                    }
+                    return label;
+                });
+    }
+
+    // makes the runs reproducible
+    public Simulator<S, A, P> withSeed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Runs up to {@code runs} random runs of at most {@code depth} steps each
+     * (a run also ends at a state without transitions), until a state whose
+     * label fails {@code invariant} is met. Returns that run, from its initial
+     * state up to the failing state, or null if no run met one.
+     *
+     * The run is an initial execution fragment of the facade's transition
+     * system for the model, so {@code isInitialExecutionFragment} holds for
+     * it. It ends at the failing state and is not extended to a maximal
+     * execution, so {@code isExecution} generally does not.
+     */
+    public AlternatingSequence<S, A> findViolatingFragment(Predicate<Set<P>> invariant, int runs, int depth) {
+        for (int run = 0; run < runs; run++) {
+            if (!runner.start(random))
+                return null;
+            for (int i = 0; ; i++) {
+                if (!invariant.test(runner.label()))
+                    return runner.run();
+                if (i == depth || !runner.step(random))
+                    break;
+            }
+        }
+        return null;
+    }
+
+    // a run over states and transitions given as objects
+    private static final class ObjectRunner<S, A, P> implements Runner<S, A, P> {
+
+        private final Function<Random, S> initial;
+        // a random transition out of a state, or null if it has none
+        private final BiFunction<S, Random, Transition<S, A>> step;
+        private final Function<S, Set<P>> label;
+
+        private final List<S> states = new ArrayList<>();
+        private final List<A> actions = new ArrayList<>();
+        private S state;
+
+        ObjectRunner(Function<Random, S> initial, BiFunction<S, Random, Transition<S, A>> step, Function<S, Set<P>> label) {
+            this.initial = initial;
+            this.step = step;
+            this.label = label;
+        }
+
+        @Override
+        public boolean start(Random random) {
+            states.clear();
+            actions.clear();
+            state = initial.apply(random);
+            if (state == null)
+                return false;
+            states.add(state);
+            return true;
+        }
+
+        @Override
+        public boolean step(Random random) {
+            Transition<S, A> tran = step.apply(state, random);
+            if (tran == null)
+                return false;
+            state = tran.getTo();
+            actions.add(tran.getAction());
+            states.add(state);
+            return true;
+        }
+
+        @Override
+        public Set<P> label() {
+            return label.apply(state);
+        }
+
+        @Override
+        public AlternatingSequence<S, A> run() {
+            return new AlternatingSequence<>(new ArrayList<>(states), new ArrayList<>(actions));
+        }
+    }
+
+    // a circuit run as input and register words; every input word can come next, and registers start all off
+    private static final class CircuitRunner implements Runner<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, String> {
+
+        private final PackedCircuit pc;
+        private final long mask;
+
+        // the words of the states so far
+        private long[] ins = new long[16];
+        private long[] regs = new long[16];
+        private int length;
+
+        CircuitRunner(PackedCircuit pc) {
+            this.pc = pc;
+            int inputs = pc.getInputs().size();
+            this.mask = inputs == Long.SIZE ? -1L : (1L << inputs) - 1;
+        }
+
+        private void push(long in, long reg) {
+            if (length == ins.length) {
+                ins = Arrays.copyOf(ins, 2 * length);
+                regs = Arrays.copyOf(regs, 2 * length);
+            }
+            ins[length] = in;
+            regs[length] = reg;
+            length++;
+        }
+
+        @Override
+        public boolean start(Random random) {
+            length = 0;
+            push(random.nextLong() & mask, 0);
+            return true;
+        }
+
+        @Override
+        public boolean step(Random random) {
+            long next = pc.step(ins[length - 1], regs[length - 1]);
+            push(random.nextLong() & mask, next);
+            return true;
+        }
+
+        @Override
+        public Set<String> label() {
+            return pc.label(ins[length - 1], regs[length - 1]);
+        }
+
+        @Override
+        public AlternatingSequence<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> run() {
+            List<Pair<Map<String, Boolean>, Map<String, Boolean>>> states = new ArrayList<>();
+            List<Map<String, Boolean>> actions = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                Map<String, Boolean> in = pc.getInputs().view(ins[i]);
+                if (i > 0)
+                    actions.add(in);
+                states.add(new Pair<>(in, pc.getRegisters().view(regs[i])));
+            }
+            return new AlternatingSequence<>(states, actions);
+        }
+    }
+}
@@ -6,7 +6,15 @@ import il.ac.bgu.cs.fvm.transitionsystem.Transition;
 import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
 
 import java.util.*;
-
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The sets and maps handed out by the getters are read-only views, kept up to
+ * date as the system changes; every change goes through the methods here, so
+ * the adjacency and label indexes stay in step. {@link #getLabel(Object)} is
+ * the one exception: it returns a copy the caller may change.
+ */
 public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements TransitionSystem {
 
     private String name;
@@ -15,7 +23,16 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
     private Set<STATE> initials;
     private Set<Transition> transitions;
     private Set<ATOMIC_PROPOSITION> aps;
-    private Map<STATE, Set<ATOMIC_PROPOSITION>> labels;
+    // labels are canonical bitsets over apIds; unlabeled states share the empty one
+    private Interner<ATOMIC_PROPOSITION> apIds;
+    private LabelSet.Pool<ATOMIC_PROPOSITION> labelPool;
+    private Map<STATE, LabelSet<ATOMIC_PROPOSITION>> labels;
+
+    // adjacency indexes, kept in sync with transitions
+    private Map<STATE, Set<Transition>> outgoing;
+    private Map<STATE, Set<Transition>> incoming;
+    private Map<STATE, Map<ACTION, Set<STATE>>> postByAction;
+    private Map<STATE, Map<ACTION, Set<STATE>>> preByAction;
 
     public TransitionSystemImpl(){
         actions = new HashSet<>();
@@ -23,7 +40,13 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
         initials = new HashSet<>();
         transitions = new HashSet<>();
         aps = new HashSet<>();
+        apIds = new Interner<>();
+        labelPool = new LabelSet.Pool<>(apIds);
         labels = new HashMap<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        postByAction = new HashMap<>();
+        preByAction = new HashMap<>();
     }
 
 
@@ -60,14 +83,15 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
     public void addState(Object o) {
         states.add((STATE) o);
 
-        Set<ATOMIC_PROPOSITION> s_labels = new HashSet<>();
-        labels.put((STATE)o, s_labels);
+        labels.put((STATE)o, labelPool.empty());
     }
 
     @Override
     public void addTransition(Transition t) throws InvalidTransitionException {
         if (states.contains(t.getFrom()) && states.contains(t.getTo()) && actions.contains(t.getAction())) {
-            transitions.add(t);
+            if (transitions.add(t)) {
+                index(t);
+            }
         }
         else
             throw new InvalidTransitionException(t);
@@ -75,8 +99,7 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public Set getActions() {
-        Set<ACTION> clonedActions = new HashSet<>(actions);
-        return  clonedActions;
+        return Collections.unmodifiableSet(actions);
     }
 
     @Override
@@ -86,7 +109,7 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public Set getAtomicPropositions() {
-        return aps;
+        return Collections.unmodifiableSet(aps);
     }
 
     @Override
@@ -97,34 +120,42 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
             throw new StateNotFoundException("ERROR: state s isn't in states set");
 
         // add l to set of labels of s state.
-        labels.get((STATE)s).add((ATOMIC_PROPOSITION)l);
+        LabelSet<ATOMIC_PROPOSITION> s_labels = labels.get((STATE)s).with(apIds.intern((ATOMIC_PROPOSITION)l));
+        labels.put((STATE)s, labelPool.canonical(s_labels));
     }
 
+    // a copy the caller may change; labelOf avoids the copy for read-only use
     @Override
     public Set getLabel(Object s) {
-        if (!states.contains((STATE)s))
+        return new HashSet<>(labelOf((STATE) s));
+    }
+
+    // the label of s as stored: canonical and read-only, so it is shared rather than copied
+    public Set<ATOMIC_PROPOSITION> labelOf(STATE s) {
+        LabelSet<ATOMIC_PROPOSITION> label = labels.get(s);
+        if (label == null)
             throw new StateNotFoundException("ERROR: state s isn't in states set");
-        return labels.get((STATE)s);
+        return label;
     }
 
     @Override
     public Set getInitialStates() {
-        return initials;
+        return Collections.unmodifiableSet(initials);
     }
 
     @Override
     public Map getLabelingFunction() {
-        return labels;
+        return Collections.unmodifiableMap(labels);
     }
 
     @Override
     public Set getStates() {
-        return states;
+        return Collections.unmodifiableSet(states);
     }
 
     @Override
     public Set<Transition> getTransitions() {
-        return transitions;
+        return Collections.unmodifiableSet(transitions);
     }
 
     @Override
@@ -149,16 +180,14 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public void removeLabel(Object s, Object l) {
-        labels.get((STATE)s).remove((ATOMIC_PROPOSITION)l);
+        LabelSet<ATOMIC_PROPOSITION> s_labels = labels.get((STATE)s).without(apIds.idOf(l));
+        labels.put((STATE)s, labelPool.canonical(s_labels));
     }
 
     @Override
     public void removeState(Object o) throws DeletionOfAttachedStateException {
-
-        for (Transition tran : transitions){
-            if (tran.getFrom().equals((STATE)o) || tran.getTo().equals((STATE)o)){
-                throw new DeletionOfAttachedStateException((STATE)o, TransitionSystemPart.STATES);
-            }
+        if (outgoing.containsKey((STATE)o) || incoming.containsKey((STATE)o)){
+            throw new DeletionOfAttachedStateException((STATE)o, TransitionSystemPart.STATES);
         }
         if( labels.keySet().contains((STATE)o) && !labels.get((STATE)o).isEmpty()) {
             throw new DeletionOfAttachedStateException((STATE)o, TransitionSystemPart.STATES);
@@ -173,6 +202,141 @@ public class TransitionSystemImpl<STATE,ACTION,ATOMIC_PROPOSITION> implements Tr
 
     @Override
     public void removeTransition(Transition t) {
-        transitions.remove(t);
+        if (transitions.remove(t)) {
+            unindex(t);
+        }
+    }
+
+    // true iff no state has two transitions with the same action, answered from the index
+    public boolean hasDeterministicActions() {
+        for (Map<ACTION, Set<STATE>> byAction : postByAction.values()) {
+            for (Set<STATE> post : byAction.values()) {
+                if (post.size() > 1)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+
+    // successors of s, answered from the adjacency index
+    public Set<STATE> post(STATE s) {
+        Set<STATE> post = new HashSet<>();
+        for (Transition tran : getOutgoingTransitions(s)) {
+            post.add((STATE) tran.getTo());
+        }
+        return post;
+    }
+
+    public Set<STATE> post(STATE s, ACTION a) {
+        Map<ACTION, Set<STATE>> byAction = postByAction.get(s);
+        if (byAction == null || !byAction.containsKey(a))
+            return new HashSet<>();
+        return new HashSet<>(byAction.get(a));
+    }
+
+    // predecessors of s, answered from the adjacency index
+    public Set<STATE> pre(STATE s) {
+        Set<STATE> pre = new HashSet<>();
+        for (Transition tran : getIncomingTransitions(s)) {
+            pre.add((STATE) tran.getFrom());
+        }
+        return pre;
+    }
+
+    public Set<STATE> pre(STATE s, ACTION a) {
+        Map<ACTION, Set<STATE>> byAction = preByAction.get(s);
+        if (byAction == null || !byAction.containsKey(a))
+            return new HashSet<>();
+        return new HashSet<>(byAction.get(a));
+    }
+
+    public boolean isTerminal(STATE s) {
+        return !outgoing.containsKey(s);
+    }
+
+    public Set<Transition> getOutgoingTransitions(STATE s) {
+        Set<Transition> out = outgoing.get(s);
+        return out == null ? Collections.emptySet() : Collections.unmodifiableSet(out);
+    }
+
+    public Set<Transition> getIncomingTransitions(STATE s) {
+        Set<Transition> in = incoming.get(s);
+        return in == null ? Collections.emptySet() : Collections.unmodifiableSet(in);
+    }
+
+    // outgoing transitions of any transition system: answered from the index of a
+    // TransitionSystemImpl, or from an index built here once for other implementations
+    public static <S, A> Function<S, Collection<Transition<S, A>>> outgoingTransitions(TransitionSystem<S, A, ?> ts) {
+        if (ts instanceof TransitionSystemImpl) {
+            TransitionSystemImpl<S, A, ?> impl = (TransitionSystemImpl<S, A, ?>) ts;
+            return s -> (Collection) impl.getOutgoingTransitions(s);
+        }
+
+        Map<S, List<Transition<S, A>>> outgoing = new HashMap<>();
+        for (Transition<S, A> tran : ts.getTransitions()) {
+            outgoing.computeIfAbsent(tran.getFrom(), k -> new ArrayList<>()).add(tran);
+        }
+        return s -> outgoing.getOrDefault(s, Collections.emptyList());
+    }
+
+    // labels of any transition system, for reading: the stored ones of a TransitionSystemImpl
+    public static <S, P> Function<S, Set<P>> labels(TransitionSystem<S, ?, P> ts) {
+        if (ts instanceof TransitionSystemImpl) {
+            TransitionSystemImpl<S, ?, P> impl = (TransitionSystemImpl<S, ?, P>) ts;
+            return impl::labelOf;
+        }
+        return ts::getLabel;
+    }
+
+    // post(s, a) of any transition system, answered from an index like outgoingTransitions
+    public static <S, A> BiFunction<S, A, Set<S>> successorsByAction(TransitionSystem<S, A, ?> ts) {
+        if (ts instanceof TransitionSystemImpl) {
+            TransitionSystemImpl<S, A, ?> impl = (TransitionSystemImpl<S, A, ?>) ts;
+            return (s, a) -> {
+                Map<A, Set<S>> byAction = impl.postByAction.get(s);
+                Set<S> post = byAction == null ? null : byAction.get(a);
+                return post == null ? Collections.emptySet() : Collections.unmodifiableSet(post);
+            };
+        }
+
+        Map<S, Map<A, Set<S>>> postByAction = new HashMap<>();
+        for (Transition<S, A> tran : ts.getTransitions()) {
+            postByAction.computeIfAbsent(tran.getFrom(), k -> new HashMap<>())
+                    .computeIfAbsent(tran.getAction(), k -> new HashSet<>()).add(tran.getTo());
+        }
+        return (s, a) -> postByAction.getOrDefault(s, Collections.emptyMap()).getOrDefault(a, Collections.emptySet());
+    }
+
+    private void index(Transition t) {
+        STATE from = (STATE) t.getFrom();
+        STATE to = (STATE) t.getTo();
+        ACTION a = (ACTION) t.getAction();
+        outgoing.computeIfAbsent(from, k -> new HashSet<>()).add(t);
+        incoming.computeIfAbsent(to, k -> new HashSet<>()).add(t);
+        postByAction.computeIfAbsent(from, k -> new HashMap<>()).computeIfAbsent(a, k -> new HashSet<>()).add(to);
+        preByAction.computeIfAbsent(to, k -> new HashMap<>()).computeIfAbsent(a, k -> new HashSet<>()).add(from);
+    }
+
+    // empty buckets are dropped, so a state is attached iff it still has a key
+    private void unindex(Transition t) {
+        STATE from = (STATE) t.getFrom();
+        STATE to = (STATE) t.getTo();
+        ACTION a = (ACTION) t.getAction();
+        removeFromBucket(outgoing, from, t);
+        removeFromBucket(incoming, to, t);
+        removeFromBucket(postByAction.get(from), a, to);
+        if (postByAction.get(from).isEmpty())
+            postByAction.remove(from);
+        removeFromBucket(preByAction.get(to), a, from);
+        if (preByAction.get(to).isEmpty())
+            preByAction.remove(to);
+    }
+
+    private static <K, V> void removeFromBucket(Map<K, Set<V>> index, K key, V value) {
+        Set<V> bucket = index.get(key);
+        bucket.remove(value);
+        if (bucket.isEmpty())
+            index.remove(key);
     }
 }
@@ -0,0 +1,362 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable variable valuation with a fixed layout: every variable name of
+ * a run gets a slot index in a shared {@link Layout}, and a valuation is an
+ * array of slot values. Slots are kept in small chunks, and a valuation made
+ * by {@link #edit()}-ing another copies only the chunks it changes, so
+ * successor states share the rest with their predecessor. Int and boolean
+ * values, the common case in program graphs, are stored unboxed; anything
+ * else goes to a per-chunk object array, made only when first needed.
+ *
+ * It is a read-only {@link Map} with the usual equals/hashCode contract, so it
+ * can stand in for the {@code Map<String, Object>} of a program-graph state.
+ * The hash code is computed incrementally and cached, and two valuations of
+ * the same layout are compared slot by slot, skipping shared chunks.
+ */
+public final class Valuation extends AbstractMap<String, Object> {
+
+    private static final int CHUNK = 8;
+
+    // marks an unset slot, so that null stays a legal value
+    private static final Object ABSENT = new Object();
+
+    private static final byte NONE = 0, INT = 1, BOOL = 2, OBJECT = 3;
+
+    // CHUNK slots: the kind of each, ints and booleans (as 0/1) in ints, other values in objects
+    private static final class Chunk {
+
+        private final byte[] kinds;
+        private final int[] ints;
+        private Object[] objects;
+
+        Chunk() {
+            kinds = new byte[CHUNK];
+            ints = new int[CHUNK];
+        }
+
+        Chunk(Chunk other) {
+            kinds = other.kinds.clone();
+            ints = other.ints.clone();
+            objects = other.objects == null ? null : other.objects.clone();
+        }
+
+        Object get(int i) {
+            switch (kinds[i]) {
+                case INT:
+                    return ints[i];
+                case BOOL:
+                    return ints[i] != 0;
+                case OBJECT:
+                    return objects[i];
+                default:
+                    return ABSENT;
+            }
+        }
+
+        // whether slot i already holds value, so that setting it would change nothing
+        boolean holds(int i, Object value) {
+            switch (kinds[i]) {
+                case INT:
+                    return value instanceof Integer && (Integer) value == ints[i];
+                case BOOL:
+                    return value instanceof Boolean && (Boolean) value == (ints[i] != 0);
+                case OBJECT:
+                    return objects[i] == value;
+                default:
+                    return value == ABSENT;
+            }
+        }
+
+        void set(int i, Object value) {
+            if (objects != null)
+                objects[i] = null;
+            ints[i] = 0;
+            if (value == ABSENT) {
+                kinds[i] = NONE;
+            }
+            else if (value instanceof Integer) {
+                kinds[i] = INT;
+                ints[i] = (Integer) value;
+            }
+            else if (value instanceof Boolean) {
+                kinds[i] = BOOL;
+                ints[i] = (Boolean) value ? 1 : 0;
+            }
+            else {
+                if (objects == null)
+                    objects = new Object[CHUNK];
+                kinds[i] = OBJECT;
+                objects[i] = value;
+            }
+        }
+
+        // the hash of the map entry of name and slot i's value, as Integer/Boolean would give it
+        int entryHash(int i, String name) {
+            switch (kinds[i]) {
+                case INT:
+                    return name.hashCode() ^ ints[i];
+                case BOOL:
+                    return name.hashCode() ^ (ints[i] != 0 ? 1231 : 1237);
+                default:
+                    return name.hashCode() ^ Objects.hashCode(objects[i]);
+            }
+        }
+
+        boolean sameAt(int i, Chunk other) {
+            if (kinds[i] != other.kinds[i])
+                return false;
+            switch (kinds[i]) {
+                case INT:
+                case BOOL:
+                    return ints[i] == other.ints[i];
+                case OBJECT:
+                    return Objects.equals(objects[i], other.objects[i]);
+                default:
+                    return true;
+            }
+        }
+    }
+
+    // stands in for chunks no valuation has set anything in; never modified
+    private static final Chunk EMPTY = new Chunk();
+
+    /** Variable name to slot index, shared by all valuations of a run (and safe to share between threads). */
+    public static final class Layout {
+
+        private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+        // replaced, never modified, so readers always see a complete array
+        private volatile String[] names = new String[0];
+        private final Valuation empty = new Valuation(this, new Chunk[0], 0, 0);
+
+        public int slot(String name) {
+            Integer slot = slots.get(name);
+            return slot != null ? slot : add(name);
+        }
+
+        // only taken for names not seen before, so lookups never lock
+        private synchronized int add(String name) {
+            Integer slot = slots.get(name);
+            if (slot != null)
+                return slot;
+            int added = names.length;
+            String[] grown = Arrays.copyOf(names, added + 1);
+            grown[added] = name;
+            names = grown;
+            slots.put(name, added);
+            return added;
+        }
+
+        // the slot of name, or -1 if no valuation of this layout has it
+        public int slotOf(Object name) {
+            Integer slot = slots.get(name);
+            return slot == null ? -1 : slot;
+        }
+
+        public String name(int slot) {
+            return names[slot];
+        }
+
+        public Valuation empty() {
+            return empty;
+        }
+
+        // eval itself if it already is a valuation of this layout, otherwise a copy of it
+        public Valuation of(Map<String, Object> eval) {
+            if (eval instanceof Valuation && ((Valuation) eval).layout == this)
+                return (Valuation) eval;
+            Builder b = empty.edit();
+            for (Map.Entry<String, Object> e : eval.entrySet()) {
+                b.put(e.getKey(), e.getValue());
+            }
+            return b.build();
+        }
+    }
+
+    /** Collects changes to a valuation; untouched chunks stay shared with it. */
+    public static final class Builder {
+
+        private final Valuation base;
+        private Chunk[] chunks;
+        private boolean[] copied;
+        private int size;
+        private int hash;
+
+        private Builder(Valuation base) {
+            this.base = base;
+            this.chunks = base.chunks.clone();
+            this.copied = new boolean[chunks.length];
+            this.size = base.size;
+            this.hash = base.hash;
+        }
+
+        public Builder put(String name, Object value) {
+            set(base.layout.slot(name), value);
+            return this;
+        }
+
+        public Builder remove(String name) {
+            int slot = base.layout.slotOf(name);
+            if (slot >= 0)
+                set(slot, ABSENT);
+            return this;
+        }
+
+        private void set(int slot, Object value) {
+            int c = slot / CHUNK;
+            int i = slot % CHUNK;
+            if (c >= chunks.length || chunks[c] == null) {
+                if (value == ABSENT)
+                    return;
+            }
+            if (c >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, c + 1);
+                copied = Arrays.copyOf(copied, c + 1);
+            }
+            if (chunks[c] == null) {
+                chunks[c] = new Chunk();
+                copied[c] = true;
+            }
+
+            Chunk chunk = chunks[c];
+            if (chunk.holds(i, value))
+                return;
+            if (!copied[c]) {
+                chunk = chunks[c] = new Chunk(chunk);
+                copied[c] = true;
+            }
+
+            String name = base.layout.name(slot);
+            if (chunk.kinds[i] != NONE) {
+                size--;
+                hash -= chunk.entryHash(i, name);
+            }
+            chunk.set(i, value);
+            if (value != ABSENT) {
+                size++;
+                hash += chunk.entryHash(i, name);
+            }
+        }
+
+        public Valuation build() {
+            return new Valuation(base.layout, chunks, size, hash);
+        }
+    }
+
+    private final Layout layout;
+    private final Chunk[] chunks;
+    private final int size;
+    private final int hash;
+
+    private Valuation(Layout layout, Chunk[] chunks, int size, int hash) {
+        this.layout = layout;
+        this.chunks = chunks;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    public Builder edit() {
+        return new Builder(this);
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    private Chunk chunk(int c) {
+        return c < chunks.length && chunks[c] != null ? chunks[c] : EMPTY;
+    }
+
+    private Object slot(int slot) {
+        if (slot < 0)
+            return ABSENT;
+        return chunk(slot / CHUNK).get(slot % CHUNK);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = slot(layout.slotOf(key));
+        return value == ABSENT ? null : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slot(layout.slotOf(key)) != ABSENT;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        int end = chunks.length * CHUNK;
+                        while (from < end && chunk(from / CHUNK).kinds[from % CHUNK] == NONE) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < chunks.length * CHUNK;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        Entry<String, Object> e = new SimpleImmutableEntry<>(layout.name(next), slot(next));
+                        next = advance(next + 1);
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Valuation) || ((Valuation) o).layout != layout)
+            return super.equals(o);
+
+        Valuation other = (Valuation) o;
+        if (hash != other.hash || size != other.size)
+            return false;
+        int n = Math.max(chunks.length, other.chunks.length);
+        for (int c = 0; c < n; c++) {
+            Chunk mine = chunk(c);
+            Chunk theirs = other.chunk(c);
+            if (mine == theirs)
+                continue;
+            for (int i = 0; i < CHUNK; i++) {
+                if (!mine.sameAt(i, theirs))
+                    return false;
+            }
+        }
+        return true;
+    }
+}
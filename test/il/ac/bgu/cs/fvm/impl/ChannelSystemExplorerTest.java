@@ -0,0 +1,218 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.seq;
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class ChannelSystemExplorerTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // locations n0..n2 from n0, var starting at 0; transitions as from, condition, action, to
+    private ProgramGraph<String, String> pg(String n, String var, String... trans) {
+        ProgramGraph<String, String> pg = fvm.createProgramGraph();
+        for (int i = 0; i < 3; i++) {
+            pg.addLocation(n + i);
+        }
+        pg.setInitial(n + "0", true);
+        pg.addInitalization(seq(var + ":=0"));
+        for (int i = 0; i < trans.length; i += 4) {
+            pg.addTransition(new PGTransition<>(trans[i], trans[i + 1], trans[i + 2], trans[i + 3]));
+        }
+        return pg;
+    }
+
+    // x:=1 and y:=2 are independent, then x is handed to y over _c
+    private ChannelSystem<String, String> pipe() {
+        return new ChannelSystem<>(Arrays.asList(
+                pg("l", "x", "l0", "", "x:=1", "l1", "l1", "", "_c!x", "l2"),
+                pg("m", "y", "m0", "", "y:=2", "m1", "m1", "", "_c?y", "m2")));
+    }
+
+    // two copies of one process, each with its own a, racing to copy it into s
+    private ChannelSystem<String, String> twins() {
+        return new ChannelSystem<>(Arrays.asList(
+                pg("l", "a0", "l0", "", "a0:=1", "l1", "l1", "s==0", "s:=a0", "l2"),
+                pg("l", "a1", "l0", "", "a1:=1", "l1", "l1", "s==0", "s:=a1", "l2")));
+    }
+
+    // location and values as name, value pairs
+    static Pair<List<String>, Map<String, Object>> st(List<String> locs, Object... values) {
+        Map<String, Object> eval = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            eval.put((String) values[i], values[i + 1]);
+        }
+        return new Pair<>(locs, eval);
+    }
+
+    @SafeVarargs
+    private static Set<Pair<List<String>, Map<String, Object>>> states(Pair<List<String>, Map<String, Object>>... states) {
+        Set<Pair<List<String>, Map<String, Object>>> all = new HashSet<>();
+        for (Pair<List<String>, Map<String, Object>> state : states) {
+            all.add(state);
+        }
+        return all;
+    }
+
+    @SafeVarargs
+    private static Set<Transition<Pair<List<String>, Map<String, Object>>, String>> transitions(Transition<Pair<List<String>, Map<String, Object>>, String>... transitions) {
+        Set<Transition<Pair<List<String>, Map<String, Object>>, String>> all = new HashSet<>();
+        for (Transition<Pair<List<String>, Map<String, Object>>, String> tran : transitions) {
+            all.add(tran);
+        }
+        return all;
+    }
+
+    @Test
+    public void exploresEveryInterleaving() {
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromChannelSystem(pipe());
+
+        Pair<List<String>, Map<String, Object>> s00 = st(seq("l0", "m0"), "x", 0, "y", 0);
+        Pair<List<String>, Map<String, Object>> s01 = st(seq("l0", "m1"), "x", 0, "y", 2);
+        Pair<List<String>, Map<String, Object>> s10 = st(seq("l1", "m0"), "x", 1, "y", 0);
+        Pair<List<String>, Map<String, Object>> s11 = st(seq("l1", "m1"), "x", 1, "y", 2);
+        Pair<List<String>, Map<String, Object>> s22 = st(seq("l2", "m2"), "x", 1, "y", 1);
+        assertEquals(states(s00, s01, s10, s11, s22), ts.getStates());
+        assertEquals(states(s00), ts.getInitialStates());
+        assertEquals(set("x:=1", "y:=2", "_c!x|_c?y"), ts.getActions());
+        assertEquals(transitions(
+                new Transition<>(s00, "x:=1", s10), new Transition<>(s00, "y:=2", s01),
+                new Transition<>(s01, "x:=1", s11), new Transition<>(s10, "y:=2", s11),
+                new Transition<>(s11, "_c!x|_c?y", s22)), ts.getTransitions());
+        assertEquals(set("l0", "m1", "x = 0", "y = 2"), ts.getLabel(s01));
+        assertEquals(set("l2", "m2", "x = 1", "y = 1"), ts.getLabel(s22));
+    }
+
+    @Test
+    public void handShakesBetweenTwoOfThreeProcesses() {
+        // k runs on its own while l and m hand x over _c
+        ChannelSystem<String, String> cs = new ChannelSystem<>(Arrays.asList(
+                pg("k", "z", "k0", "", "z:=3", "k1"),
+                pg("l", "x", "l0", "", "x:=1", "l1", "l1", "", "_c!x", "l2"),
+                pg("m", "y", "m0", "", "y:=2", "m1", "m1", "", "_c?y", "m2")));
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromChannelSystem(cs);
+
+        Pair<List<String>, Map<String, Object>> s011 = st(seq("k0", "l1", "m1"), "x", 1, "y", 2, "z", 0);
+        Pair<List<String>, Map<String, Object>> s022 = st(seq("k0", "l2", "m2"), "x", 1, "y", 1, "z", 0);
+        Pair<List<String>, Map<String, Object>> s111 = st(seq("k1", "l1", "m1"), "x", 1, "y", 2, "z", 3);
+        Pair<List<String>, Map<String, Object>> s122 = st(seq("k1", "l2", "m2"), "x", 1, "y", 1, "z", 3);
+        assertEquals(10, ts.getStates().size());
+        assertEquals(states(st(seq("k0", "l0", "m0"), "x", 0, "y", 0, "z", 0)), ts.getInitialStates());
+        assertEquals(set("z:=3", "x:=1", "y:=2", "_c!x|_c?y"), ts.getActions());
+        assertTrue(ts.getTransitions().containsAll(transitions(
+                new Transition<>(s011, "_c!x|_c?y", s022), new Transition<>(s111, "_c!x|_c?y", s122),
+                new Transition<>(s011, "z:=3", s111), new Transition<>(s022, "z:=3", s122))));
+        // the handshake never moves k, and is the only step l and m take together
+        for (Transition<Pair<List<String>, Map<String, Object>>, String> tran : ts.getTransitions()) {
+            List<String> from = tran.getFrom().first;
+            List<String> to = tran.getTo().first;
+            if (tran.getAction().equals("_c!x|_c?y")) {
+                assertEquals(from.get(0), to.get(0));
+            }
+            else {
+                int moved = 0;
+                for (int i = 0; i < 3; i++) {
+                    if (!from.get(i).equals(to.get(i)))
+                        moved++;
+                }
+                assertEquals(1, moved);
+            }
+        }
+        assertEquals(set("k1", "l2", "m2", "x = 1", "y = 1", "z = 3"), ts.getLabel(s122));
+    }
+
+    @Test
+    public void labelsAProcessOnItsOwn() {
+        ChannelSystem<String, String> cs = new ChannelSystem<>(Collections.singletonList(
+                pg("l", "x", "l0", "", "x:=1", "l1", "l1", "x==1", "x:=2", "l2", "l1", "x==2", "x:=0", "l0")));
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromChannelSystem(cs);
+
+        Pair<List<String>, Map<String, Object>> s0 = st(seq("l0"), "x", 0);
+        Pair<List<String>, Map<String, Object>> s1 = st(seq("l1"), "x", 1);
+        Pair<List<String>, Map<String, Object>> s2 = st(seq("l2"), "x", 2);
+        assertEquals(states(s0, s1, s2), ts.getStates());
+        assertEquals(transitions(new Transition<>(s0, "x:=1", s1), new Transition<>(s1, "x:=2", s2)), ts.getTransitions());
+        assertEquals(set("l0", "l1", "l2", "x = 0", "x = 1", "x = 2"), ts.getAtomicPropositions());
+        assertEquals(set("l0", "x = 0"), ts.getLabel(s0));
+        assertEquals(set("l1", "x = 1"), ts.getLabel(s1));
+        assertEquals(set("l2", "x = 2"), ts.getLabel(s2));
+    }
+
+    @Test
+    public void reducesToOneOrderOfIndependentSteps() {
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> full = fvm.transitionSystemFromChannelSystem(pipe());
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromChannelSystem(pipe(), set("y"));
+
+        // only x:=1 is taken first, and the handshake still ends in the same state
+        Pair<List<String>, Map<String, Object>> s00 = st(seq("l0", "m0"), "x", 0, "y", 0);
+        Pair<List<String>, Map<String, Object>> s10 = st(seq("l1", "m0"), "x", 1, "y", 0);
+        Pair<List<String>, Map<String, Object>> s11 = st(seq("l1", "m1"), "x", 1, "y", 2);
+        Pair<List<String>, Map<String, Object>> s22 = st(seq("l2", "m2"), "x", 1, "y", 1);
+        assertEquals(states(s00, s10, s11, s22), ts.getStates());
+        assertEquals(full.getInitialStates(), ts.getInitialStates());
+        assertEquals(transitions(
+                new Transition<>(s00, "x:=1", s10), new Transition<>(s10, "y:=2", s11),
+                new Transition<>(s11, "_c!x|_c?y", s22)), ts.getTransitions());
+        assertTrue(full.getStates().containsAll(ts.getStates()));
+        assertTrue(full.getTransitions().containsAll(ts.getTransitions()));
+        for (Pair<List<String>, Map<String, Object>> s : ts.getStates()) {
+            assertEquals(full.getLabel(s), ts.getLabel(s));
+        }
+    }
+
+    @Test
+    public void keepsEveryOrderWhenBothStepsAreVisible() {
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> full = fvm.transitionSystemFromChannelSystem(pipe());
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromChannelSystem(pipe(), set("x", "y"));
+
+        assertEquals(full.getStates(), ts.getStates());
+        assertEquals(full.getTransitions(), ts.getTransitions());
+    }
+
+    @Test
+    public void storesOneStatePerPermutationOfTwins() {
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> full = fvm.transitionSystemFromChannelSystem(twins());
+        TransitionSystem<Pair<List<String>, Map<String, Object>>, String, String> ts = new ChannelSystemExplorer<>(twins())
+                .withSymmetry(seq(0, 1), Arrays.asList(seq("a0"), seq("a1"))).explore();
+
+        // 8 states without the reduction; with it, the processes are sorted by location
+        assertEquals(8, full.getStates().size());
+        Pair<List<String>, Map<String, Object>> s00 = st(seq("l0", "l0"), "a0", 0, "a1", 0);
+        Pair<List<String>, Map<String, Object>> s01 = st(seq("l0", "l1"), "a0", 0, "a1", 1);
+        Pair<List<String>, Map<String, Object>> s02 = st(seq("l0", "l2"), "a0", 0, "a1", 1, "s", 1);
+        Pair<List<String>, Map<String, Object>> s11 = st(seq("l1", "l1"), "a0", 1, "a1", 1);
+        Pair<List<String>, Map<String, Object>> s12 = st(seq("l1", "l2"), "a0", 1, "a1", 1, "s", 1);
+        assertEquals(states(s00, s01, s02, s11, s12), ts.getStates());
+        assertEquals(states(s00), ts.getInitialStates());
+        assertEquals(transitions(
+                new Transition<>(s00, "a0:=1", s01), new Transition<>(s00, "a1:=1", s01),
+                new Transition<>(s01, "a0:=1", s11), new Transition<>(s01, "s:=a1", s02),
+                new Transition<>(s02, "a0:=1", s12),
+                new Transition<>(s11, "s:=a0", s12), new Transition<>(s11, "s:=a1", s12)), ts.getTransitions());
+        assertTrue(full.getStates().containsAll(ts.getStates()));
+        for (Pair<List<String>, Map<String, Object>> s : ts.getStates()) {
+            assertEquals(full.getLabel(s), ts.getLabel(s));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSymmetryWithoutLocalsForEachProcess() {
+        new ChannelSystemExplorer<>(twins()).withSymmetry(seq(0, 1), Collections.singletonList(seq("a0")));
+    }
+}
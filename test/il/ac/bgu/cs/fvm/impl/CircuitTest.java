@@ -0,0 +1,226 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class CircuitTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // r' = x or r, y = x and r
+    private static Circuit latch() {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return set("x");
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                return set("r");
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return set("y");
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("r", inputs.get("x") || registers.get("r"));
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("y", inputs.get("x") && registers.get("r"));
+            }
+        };
+    }
+
+    // r0' = true, r(i)' = r(i-1) and x, y = r(n-1)
+    private static Circuit shift(int n) {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return set("x");
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                Set<String> regs = new LinkedHashSet<>();
+                for (int i = 0; i < n; i++) {
+                    regs.add("r" + i);
+                }
+                return regs;
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return set("y");
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                Map<String, Boolean> next = new HashMap<>();
+                next.put("r0", true);
+                for (int i = 1; i < n; i++) {
+                    next.put("r" + i, registers.get("r" + (i - 1)) && inputs.get("x"));
+                }
+                return next;
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("y", registers.get("r" + (n - 1)));
+            }
+        };
+    }
+
+    // n inputs and nothing else
+    private static Circuit inputs(int n) {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                Set<String> inputs = new LinkedHashSet<>();
+                for (int i = 0; i < n; i++) {
+                    inputs.add("x" + i);
+                }
+                return inputs;
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.emptyMap();
+            }
+        };
+    }
+
+    private static Map<String, Boolean> x(boolean x) {
+        return Collections.singletonMap("x", x);
+    }
+
+    // the first k of n registers on
+    private static Map<String, Boolean> regs(int n, int k) {
+        Map<String, Boolean> regs = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            regs.put("r" + i, i < k);
+        }
+        return regs;
+    }
+
+    private static Pair<Map<String, Boolean>, Map<String, Boolean>> st(boolean x, Map<String, Boolean> regs) {
+        return new Pair<>(x(x), regs);
+    }
+
+    @SafeVarargs
+    private static Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> states(Pair<Map<String, Boolean>, Map<String, Boolean>>... states) {
+        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> all = new HashSet<>();
+        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state : states) {
+            all.add(state);
+        }
+        return all;
+    }
+
+    @SafeVarargs
+    private static Set<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>> transitions(Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>... transitions) {
+        Set<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>> all = new HashSet<>();
+        for (Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> tran : transitions) {
+            all.add(tran);
+        }
+        return all;
+    }
+
+    @Test
+    public void labelsStatesWithInputsRegistersAndOutputs() {
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(latch());
+
+        Map<String, Boolean> off = Collections.singletonMap("r", false);
+        Map<String, Boolean> on = Collections.singletonMap("r", true);
+        assertEquals(states(st(false, off), st(false, on), st(true, off), st(true, on)), ts.getStates());
+        assertEquals(states(st(false, off), st(true, off)), ts.getInitialStates());
+        assertEquals(new HashSet<>(Arrays.asList(x(false), x(true))), ts.getActions());
+        assertEquals(set("x", "r", "y"), ts.getAtomicPropositions());
+        assertEquals(transitions(
+                new Transition<>(st(false, off), x(false), st(false, off)), new Transition<>(st(false, off), x(true), st(true, off)),
+                new Transition<>(st(false, on), x(false), st(false, on)), new Transition<>(st(false, on), x(true), st(true, on)),
+                new Transition<>(st(true, off), x(false), st(false, on)), new Transition<>(st(true, off), x(true), st(true, on)),
+                new Transition<>(st(true, on), x(false), st(false, on)), new Transition<>(st(true, on), x(true), st(true, on))), ts.getTransitions());
+        assertEquals(set(), ts.getLabel(st(false, off)));
+        assertEquals(set("r"), ts.getLabel(st(false, on)));
+        assertEquals(set("x"), ts.getLabel(st(true, off)));
+        assertEquals(set("x", "r", "y"), ts.getLabel(st(true, on)));
+    }
+
+    @Test
+    public void leavesOutUnreachableRegisterValues() {
+        // 8 of the 16 states can be reached: the registers that are on are always a prefix
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(shift(3));
+
+        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> states = new LinkedHashSet<>();
+        for (int k = 0; k <= 3; k++) {
+            states.add(st(false, regs(3, k)));
+            states.add(st(true, regs(3, k)));
+        }
+        assertEquals(states, ts.getStates());
+        assertEquals(16, ts.getTransitions().size());
+        assertTrue(ts.getTransitions().contains(new Transition<>(st(true, regs(3, 1)), x(false), st(false, regs(3, 2)))));
+        assertTrue(ts.getTransitions().contains(new Transition<>(st(false, regs(3, 2)), x(true), st(true, regs(3, 1)))));
+        assertEquals(set("r0", "r1", "r2", "y"), ts.getLabel(st(false, regs(3, 3))));
+    }
+
+    @Test
+    public void unfoldsCircuitsWithMoreRegistersThanAWord() {
+        int n = 70;
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(shift(n));
+
+        assertEquals(2 * (n + 1), ts.getStates().size());
+        assertEquals(4 * (n + 1), ts.getTransitions().size());
+        assertEquals(states(st(false, regs(n, 0)), st(true, regs(n, 0))), ts.getInitialStates());
+        assertTrue(ts.getTransitions().contains(new Transition<>(st(true, regs(n, n - 1)), x(true), st(true, regs(n, n)))));
+        assertTrue(ts.getLabel(st(true, regs(n, n))).contains("y"));
+        assertFalse(ts.getLabel(st(true, regs(n, n - 1))).contains("y"));
+    }
+
+    @Test
+    public void unfoldsEveryInputValuation() {
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(inputs(4));
+
+        assertEquals(16, ts.getStates().size());
+        assertEquals(16, ts.getInitialStates().size());
+        assertEquals(16 * 16, ts.getTransitions().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyInputsToEnumerate() {
+        fvm.transitionSystemFromCircuit(inputs(63));
+    }
+}
@@ -0,0 +1,96 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class CompositionTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // n0 -own-> n1 -h-> n0, with ap on at n0; with branching, also n1 -h-> n1
+    private TransitionSystem<String, String, String> component(String n, String own, String ap, boolean branching) {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.addState(n + "0");
+        ts.addState(n + "1");
+        ts.addAction(own);
+        ts.addAction("h");
+        ts.addAtomicProposition(ap);
+        ts.addToLabel(n + "0", ap);
+        ts.setInitial(n + "0", true);
+        ts.addTransition(new Transition<>(n + "0", own, n + "1"));
+        ts.addTransition(new Transition<>(n + "1", "h", n + "0"));
+        if (branching) {
+            ts.addTransition(new Transition<>(n + "1", "h", n + "1"));
+        }
+        return ts;
+    }
+
+    private static List<String> flat(Pair<Pair<String, String>, String> s) {
+        return Arrays.asList(s.first.first, s.first.second, s.second);
+    }
+
+    // checks that the n-ary composition of a, b and c is (a || b) || c with flat states
+    private void assertComposesLikeChainedInterleave(Set<String> handShakingActions) {
+        TransitionSystem<String, String, String> a = component("a", "x", "p", true);
+        TransitionSystem<String, String, String> b = component("b", "y", "q", false);
+        TransitionSystem<String, String, String> c = component("c", "z", "r", false);
+
+        TransitionSystem<List<String>, String, String> composed = fvm.interleave(Arrays.asList(a, b, c), handShakingActions);
+        TransitionSystem<Pair<Pair<String, String>, String>, String, String> chained =
+                fvm.interleave(fvm.interleave(a, b, handShakingActions), c, handShakingActions);
+
+        Set<List<String>> states = new HashSet<>();
+        for (Pair<Pair<String, String>, String> s : chained.getStates()) {
+            states.add(flat(s));
+            assertEquals(chained.getLabel(s), composed.getLabel(flat(s)));
+        }
+        assertEquals(states, composed.getStates());
+
+        Set<List<String>> initialStates = new HashSet<>();
+        for (Pair<Pair<String, String>, String> s : chained.getInitialStates()) {
+            initialStates.add(flat(s));
+        }
+        assertEquals(initialStates, composed.getInitialStates());
+
+        Set<Transition<List<String>, String>> transitions = new HashSet<>();
+        for (Transition<Pair<Pair<String, String>, String>, String> t : chained.getTransitions()) {
+            transitions.add(new Transition<>(flat(t.getFrom()), t.getAction(), flat(t.getTo())));
+        }
+        assertEquals(transitions, composed.getTransitions());
+
+        assertEquals(chained.getActions(), composed.getActions());
+        assertEquals(chained.getAtomicPropositions(), composed.getAtomicPropositions());
+    }
+
+    @Test
+    public void composesLikeChainedInterleave() {
+        assertComposesLikeChainedInterleave(set());
+    }
+
+    @Test
+    public void handShakesLikeChainedInterleave() {
+        assertComposesLikeChainedInterleave(set("h"));
+    }
+
+    @Test
+    public void movesEveryComponentOnAHandShake() {
+        TransitionSystem<List<String>, String, String> ts = fvm.interleave(
+                Arrays.asList(component("a", "x", "p", true), component("b", "y", "q", false)), set("h"));
+
+        assertEquals(4, ts.getStates().size());
+        assertTrue(ts.getTransitions().contains(new Transition<>(Arrays.asList("a1", "b1"), "h", Arrays.asList("a0", "b0"))));
+        assertTrue(ts.getTransitions().contains(new Transition<>(Arrays.asList("a1", "b1"), "h", Arrays.asList("a1", "b0"))));
+        assertFalse(ts.getTransitions().contains(new Transition<>(Arrays.asList("a1", "b0"), "h", Arrays.asList("a0", "b0"))));
+        assertEquals(set("p", "q"), ts.getLabel(Arrays.asList("a0", "b0")));
+    }
+}
@@ -0,0 +1,127 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class InterleaveTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // n0 -own-> n1 -h-> n0, with ap on at n0 or n1; with unreachable, also n2 -own-> n0
+    private TransitionSystem<String, String, String> component(String n, String own, String ap, boolean apFirst, boolean unreachable) {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.addState(n + "0");
+        ts.addState(n + "1");
+        ts.addAction(own);
+        ts.addAction("h");
+        ts.addAtomicProposition(ap);
+        ts.addToLabel(apFirst ? n + "0" : n + "1", ap);
+        ts.setInitial(n + "0", true);
+        ts.addTransition(new Transition<>(n + "0", own, n + "1"));
+        ts.addTransition(new Transition<>(n + "1", "h", n + "0"));
+        if (unreachable) {
+            ts.addState(n + "2");
+            ts.addTransition(new Transition<>(n + "2", own, n + "0"));
+        }
+        return ts;
+    }
+
+    private static Pair<String, String> p(String a, String b) {
+        return new Pair<>(a, b);
+    }
+
+    private static Transition<Pair<String, String>, String> t(String a1, String b1, String action, String a2, String b2) {
+        return new Transition<>(p(a1, b1), action, p(a2, b2));
+    }
+
+    @SafeVarargs
+    private static Set<Pair<String, String>> states(Pair<String, String>... states) {
+        Set<Pair<String, String>> all = new HashSet<>();
+        for (Pair<String, String> state : states) {
+            all.add(state);
+        }
+        return all;
+    }
+
+    @SafeVarargs
+    private static Set<Transition<Pair<String, String>, String>> transitions(Transition<Pair<String, String>, String>... transitions) {
+        Set<Transition<Pair<String, String>, String>> all = new HashSet<>();
+        for (Transition<Pair<String, String>, String> tran : transitions) {
+            all.add(tran);
+        }
+        return all;
+    }
+
+    @Test
+    public void interleavesEveryPairOfStates() {
+        TransitionSystem<Pair<String, String>, String, String> ts = fvm.interleave(
+                component("a", "x", "p", true, true), component("b", "y", "q", false, true));
+
+        assertEquals(states(p("a0", "b0"), p("a0", "b1"), p("a0", "b2"), p("a1", "b0"), p("a1", "b1"), p("a1", "b2"),
+                p("a2", "b0"), p("a2", "b1"), p("a2", "b2")), ts.getStates());
+        assertEquals(states(p("a0", "b0")), ts.getInitialStates());
+        assertEquals(set("x", "y", "h"), ts.getActions());
+        assertEquals(set("p", "q"), ts.getAtomicPropositions());
+        assertEquals(transitions(
+                t("a0", "b0", "x", "a1", "b0"), t("a0", "b0", "y", "a0", "b1"),
+                t("a0", "b1", "h", "a0", "b0"), t("a0", "b1", "x", "a1", "b1"),
+                t("a0", "b2", "x", "a1", "b2"), t("a0", "b2", "y", "a0", "b0"),
+                t("a1", "b0", "h", "a0", "b0"), t("a1", "b0", "y", "a1", "b1"),
+                t("a1", "b1", "h", "a0", "b1"), t("a1", "b1", "h", "a1", "b0"),
+                t("a1", "b2", "h", "a0", "b2"), t("a1", "b2", "y", "a1", "b0"),
+                t("a2", "b0", "x", "a0", "b0"), t("a2", "b0", "y", "a2", "b1"),
+                t("a2", "b1", "h", "a2", "b0"), t("a2", "b1", "x", "a0", "b1"),
+                t("a2", "b2", "x", "a0", "b2"), t("a2", "b2", "y", "a2", "b0")), ts.getTransitions());
+        assertEquals(set("p"), ts.getLabel(p("a0", "b0")));
+        assertEquals(set("p", "q"), ts.getLabel(p("a0", "b1")));
+        assertEquals(set(), ts.getLabel(p("a1", "b2")));
+        assertEquals(set("q"), ts.getLabel(p("a2", "b1")));
+    }
+
+    @Test
+    public void synchronizesOnHandShakeActions() {
+        TransitionSystem<Pair<String, String>, String, String> ts = fvm.interleave(
+                component("a", "x", "p", true, false), component("b", "y", "q", false, false), set("h"));
+
+        assertEquals(states(p("a0", "b0"), p("a0", "b1"), p("a1", "b0"), p("a1", "b1")), ts.getStates());
+        assertEquals(states(p("a0", "b0")), ts.getInitialStates());
+        assertEquals(set("x", "y", "h"), ts.getActions());
+        assertEquals(transitions(
+                t("a0", "b0", "x", "a1", "b0"), t("a0", "b0", "y", "a0", "b1"),
+                t("a0", "b1", "x", "a1", "b1"), t("a1", "b0", "y", "a1", "b1"),
+                t("a1", "b1", "h", "a0", "b0")), ts.getTransitions());
+        assertEquals(set("p", "q"), ts.getLabel(p("a0", "b1")));
+        assertEquals(set("q"), ts.getLabel(p("a1", "b1")));
+    }
+
+    @Test
+    public void handShakesOverReachablePairsOnly() {
+        // a2 and b2 are never reached, so no pair with them is built
+        TransitionSystem<Pair<String, String>, String, String> ts = fvm.interleave(
+                component("a", "x", "p", true, true), component("b", "y", "q", false, true), set("h"));
+
+        assertEquals(states(p("a0", "b0"), p("a0", "b1"), p("a1", "b0"), p("a1", "b1")), ts.getStates());
+        assertTrue(ts.getTransitions().contains(t("a1", "b1", "h", "a0", "b0")));
+        assertEquals(5, ts.getTransitions().size());
+    }
+
+    @Test
+    public void interleavesEverythingWithoutHandShakes() {
+        TransitionSystem<Pair<String, String>, String, String> ts = fvm.interleave(
+                component("a", "x", "p", true, false), component("b", "y", "q", false, false), set());
+
+        assertEquals(transitions(
+                t("a0", "b0", "x", "a1", "b0"), t("a0", "b0", "y", "a0", "b1"),
+                t("a0", "b1", "h", "a0", "b0"), t("a0", "b1", "x", "a1", "b1"),
+                t("a1", "b0", "h", "a0", "b0"), t("a1", "b0", "y", "a1", "b1"),
+                t("a1", "b1", "h", "a0", "b1"), t("a1", "b1", "h", "a1", "b0")), ts.getTransitions());
+    }
+}
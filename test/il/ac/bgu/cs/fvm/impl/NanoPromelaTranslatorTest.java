@@ -0,0 +1,122 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class NanoPromelaTranslatorTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    private static PGTransition<String, String> t(String from, String cond, String action, String to) {
+        return new PGTransition<>(from, cond, action, to);
+    }
+
+    @SafeVarargs
+    private static Set<PGTransition<String, String>> transitions(PGTransition<String, String>... transitions) {
+        Set<PGTransition<String, String>> all = new HashSet<>();
+        for (PGTransition<String, String> tran : transitions) {
+            all.add(tran);
+        }
+        return all;
+    }
+
+    @Test
+    public void namesLocationsByTheStatementsLeft() throws Exception {
+        ProgramGraph<String, String> pg = fvm.programGraphFromNanoPromelaString("x := 1; y := x + 2");
+
+        assertEquals(set("", "x:=1;y:=x+2", "y:=x+2"), pg.getLocations());
+        assertEquals(set("x:=1;y:=x+2"), pg.getInitialLocations());
+        assertEquals(transitions(
+                t("x:=1;y:=x+2", "", "x:=1", "y:=x+2"),
+                t("y:=x+2", "", "y:=x+2", "")), pg.getTransitions());
+    }
+
+    @Test
+    public void guardsEachIfOption() throws Exception {
+        ProgramGraph<String, String> pg = fvm.programGraphFromNanoPromelaString("if :: x == 1 -> y := 2 :: y != 2 -> skip fi");
+
+        String fi = "if::x==1->y:=2::y!=2->skipfi";
+        assertEquals(set("", fi), pg.getLocations());
+        assertEquals(set(fi), pg.getInitialLocations());
+        assertEquals(transitions(
+                t(fi, "(x==1)", "y:=2", ""),
+                t(fi, "(y!=2)", "skip", "")), pg.getTransitions());
+    }
+
+    @Test
+    public void loopsUntilNoDoGuardHolds() throws Exception {
+        ProgramGraph<String, String> pg = fvm.programGraphFromNanoPromelaString("do :: x < 3 -> x := x + 1 od; y := x");
+
+        String od = "do::x<3->x:=x+1od;y:=x";
+        assertEquals(set("", od, "y:=x"), pg.getLocations());
+        assertEquals(set(od), pg.getInitialLocations());
+        assertEquals(transitions(
+                t(od, "(x<3)", "x:=x+1", od),
+                t(od, "(!(x<3))", "", "y:=x"),
+                t("y:=x", "", "y:=x", "")), pg.getTransitions());
+    }
+
+    @Test
+    public void keepsAtomicBlocksAndChannelActionsWhole() throws Exception {
+        ProgramGraph<String, String> pg = fvm.programGraphFromNanoPromelaString("atomic {x := 1; y := 2}; C!x; C?y");
+
+        String first = "atomic{x:=1;y:=2};C!x;C?y";
+        assertEquals(set("", first, "C!x;C?y", "C?y"), pg.getLocations());
+        assertEquals(set(first), pg.getInitialLocations());
+        assertEquals(transitions(
+                t(first, "", "atomic{x:=1;y:=2}", "C!x;C?y"),
+                t("C!x;C?y", "", "C!x", "C?y"),
+                t("C?y", "", "C?y", "")), pg.getTransitions());
+    }
+
+    @Test
+    public void namesLocationsCompactlyOnRequest() {
+        ProgramGraph<String, String> pg = new NanoPromelaTranslator().withCompactNames()
+                .translate(new StringReader("do :: x < 3 -> x := x + 1 od; y := x"), fvm.createProgramGraph());
+
+        // the continuation y:=x is met first; an iteration ends back at the loop's one location
+        assertEquals(set("", "L0", "L1"), pg.getLocations());
+        assertEquals(set("L1"), pg.getInitialLocations());
+        assertEquals(transitions(
+                t("L1", "(x<3)", "x:=x+1", "L1"),
+                t("L1", "(!(x<3))", "", "L0"),
+                t("L0", "", "y:=x", "")), pg.getTransitions());
+    }
+
+    @Test
+    public void translatesLongSequencesWithoutRecursion() {
+        StringBuilder src = new StringBuilder("x := 0");
+        for (int i = 0; i < 20000; i++) {
+            src.append("; x := x + 1");
+        }
+        ProgramGraph<String, String> pg = new NanoPromelaTranslator().withCompactNames()
+                .translate(new StringReader(src.toString()), fvm.createProgramGraph());
+
+        assertEquals(20002, pg.getLocations().size());
+        assertEquals(20001, pg.getTransitions().size());
+    }
+
+    @Test
+    public void streamsLikeTheStringPath() throws Exception {
+        String src = "x := 0; do :: x < 3 -> if :: x == 1 -> atomic {x := 2; y := 1} :: x != 1 -> x := x + 1 fi\n"
+                + ":: x == 3 -> C!x; C?y od";
+        ProgramGraph<String, String> fromString = fvm.programGraphFromNanoPromelaString(src);
+        ProgramGraph<String, String> fromStream = fvm.programGraphFromNanoPromela(new ByteArrayInputStream(src.getBytes()));
+        ProgramGraph<String, String> fromReader = new NanoPromelaTranslator().translate(new StringReader(src), fvm.createProgramGraph());
+
+        assertEquals(fromString.getLocations(), fromStream.getLocations());
+        assertEquals(fromString.getInitialLocations(), fromStream.getInitialLocations());
+        assertEquals(fromString.getTransitions(), fromStream.getTransitions());
+        assertEquals(fromString.getTransitions(), fromReader.getTransitions());
+        assertEquals(set("x:=0;do::x<3->if::x==1->atomic{x:=2;y:=1}::x!=1->x:=x+1fi::x==3->C!x;C?yod"), fromStream.getInitialLocations());
+    }
+}
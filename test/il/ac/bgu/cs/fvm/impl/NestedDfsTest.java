@@ -0,0 +1,116 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static il.ac.bgu.cs.fvm.impl.ProductTest.eventuallyAlwaysG;
+import static il.ac.bgu.cs.fvm.impl.ProductTest.lights;
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.seq;
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class NestedDfsTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // always eventually g
+    static Automaton<String, String> alwaysEventuallyG() {
+        Automaton<String, String> aut = new Automaton<>();
+        aut.addTransition("q0", set(), "q0");
+        aut.addTransition("q0", set("g"), "q1");
+        aut.addTransition("q1", set(), "q0");
+        aut.addTransition("q1", set("g"), "q1");
+        aut.setInitial("q0");
+        aut.setAccepting("q1");
+        return aut;
+    }
+
+    // prefix from an initial state, then a cycle back to the prefix's last state
+    static <S> void assertCounterexample(TransitionSystem<S, ?, ?> ts, VerificationResult<S> result) {
+        assertTrue(result instanceof VerificationFailed);
+        List<S> prefix = ((VerificationFailed<S>) result).getPrefix();
+        List<S> cycle = ((VerificationFailed<S>) result).getCycle();
+        assertTrue(ts.getInitialStates().contains(prefix.get(0)));
+        assertFalse(cycle.isEmpty());
+        assertEquals(prefix.get(prefix.size() - 1), cycle.get(cycle.size() - 1));
+
+        List<S> run = new ArrayList<>(prefix);
+        run.addAll(cycle);
+        FvmFacadeImpl fvm = new FvmFacadeImpl();
+        for (int i = 0; i + 1 < run.size(); i++) {
+            assertTrue(fvm.post(ts, run.get(i)).contains(run.get(i + 1)));
+        }
+    }
+
+    @Test
+    public void findsASelfLoop() {
+        VerificationResult<String> result = fvm.verifyAnOmegaRegularProperty(lights(fvm, true), eventuallyAlwaysG());
+        assertTrue(result instanceof VerificationFailed);
+        assertEquals(seq("s0", "s1"), ((VerificationFailed<String>) result).getPrefix());
+        assertEquals(seq("s1"), ((VerificationFailed<String>) result).getCycle());
+    }
+
+    @Test
+    public void findsACycleThroughSeveralStates() {
+        VerificationResult<String> result = fvm.verifyAnOmegaRegularProperty(lights(fvm, false), alwaysEventuallyG());
+        assertTrue(result instanceof VerificationFailed);
+        assertEquals(seq("s0", "s1"), ((VerificationFailed<String>) result).getPrefix());
+        assertEquals(seq("s2", "s0", "s1"), ((VerificationFailed<String>) result).getCycle());
+    }
+
+    @Test
+    public void succeedsWithoutAcceptingCycles() {
+        assertTrue(fvm.verifyAnOmegaRegularProperty(lights(fvm, false), eventuallyAlwaysG()) instanceof VerificationSucceeded);
+
+        TransitionSystem<String, String, String> ts = lights(fvm, false);
+        ts.removeTransition(new Transition<>("s2", "go", "s0"));
+        assertTrue(fvm.verifyAnOmegaRegularProperty(ts, alwaysEventuallyG()) instanceof VerificationSucceeded);
+    }
+
+    @Test
+    public void handlesLongPathsWithoutRecursion() {
+        // a chain of 100,000 states whose last one is g and loops
+        TransitionSystem<Integer, String, String> ts = fvm.createTransitionSystem();
+        int n = 100000;
+        ts.addAction("a");
+        ts.addAtomicProposition("g");
+        for (int s = 0; s < n; s++) {
+            ts.addState(s);
+        }
+        for (int s = 0; s + 1 < n; s++) {
+            ts.addTransition(new Transition<>(s, "a", s + 1));
+        }
+        ts.addTransition(new Transition<>(n - 1, "a", n - 1));
+        ts.addToLabel(n - 1, "g");
+        ts.setInitial(0, true);
+
+        VerificationResult<Integer> result = fvm.verifyAnOmegaRegularProperty(ts, eventuallyAlwaysG());
+        assertCounterexample(ts, result);
+        assertEquals(n, ((VerificationFailed<Integer>) result).getPrefix().size());
+    }
+
+    @Test
+    public void checksInParallelWithTheSameVerdicts() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TransitionSystem<String, String, String> stay = lights(fvm, true);
+            assertCounterexample(stay, fvm.verifyAnOmegaRegularProperty(stay, eventuallyAlwaysG(), pool));
+            TransitionSystem<String, String, String> cycle = lights(fvm, false);
+            assertCounterexample(cycle, fvm.verifyAnOmegaRegularProperty(cycle, alwaysEventuallyG(), pool));
+            assertTrue(fvm.verifyAnOmegaRegularProperty(lights(fvm, false), eventuallyAlwaysG(), pool) instanceof VerificationSucceeded);
+
+            assertEquals(fvm.product(stay, eventuallyAlwaysG()).getTransitions(), fvm.product(stay, eventuallyAlwaysG(), pool).getTransitions());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
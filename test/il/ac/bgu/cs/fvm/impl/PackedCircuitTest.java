@@ -0,0 +1,131 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class PackedCircuitTest {
+
+    // r' = x xor z; the output is also named x, and x = r
+    private static Circuit echo() {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return set("x", "z");
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                return set("r");
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return set("x");
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("r", inputs.get("x") ^ inputs.get("z"));
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("x", registers.get("r"));
+            }
+        };
+    }
+
+    private static Set<String> names(int n) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < n; i++) {
+            names.add("n" + i);
+        }
+        return names;
+    }
+
+    // the map of a word over names n0..n(size-1), with every name present
+    private static Map<String, Boolean> map(int size, long word) {
+        Map<String, Boolean> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put("n" + i, (word & (1L << i)) != 0);
+        }
+        return map;
+    }
+
+    @Test
+    public void packsOneBitPerName() {
+        PackedCircuit.Layout layout = new PackedCircuit.Layout(names(64));
+
+        assertEquals(64, layout.size());
+        assertEquals(0L, layout.pack(new HashMap<>()));
+        assertEquals(1L << 63, layout.pack(Collections.singletonMap("n63", true)));
+        assertEquals(0L, layout.pack(Collections.singletonMap("n5", false)));
+        long word = 0x8000_0000_0000_0005L;
+        assertEquals(word, layout.pack(map(64, word)));
+        assertEquals(word, layout.pack(layout.view(word)));
+        assertEquals(Boolean.TRUE, layout.view(word).get("n2"));
+        assertEquals(Boolean.FALSE, layout.view(word).get("n1"));
+        assertNull(layout.view(word).get("n64"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreNamesThanAWordHasBits() {
+        new PackedCircuit.Layout(names(65));
+    }
+
+    @Test
+    public void viewsEqualAndHashLikeOrdinaryMaps() {
+        PackedCircuit.Layout layout = new PackedCircuit.Layout(names(10));
+        Map<Map<String, Boolean>, Long> byMap = new HashMap<>();
+        Set<Map<String, Boolean>> views = new HashSet<>();
+        for (long word = 0; word < 1 << 10; word++) {
+            Map<String, Boolean> view = layout.view(word);
+            Map<String, Boolean> map = map(10, word);
+            assertEquals(map, view);
+            assertEquals(view, map);
+            assertEquals(map.hashCode(), view.hashCode());
+            assertEquals(map.entrySet(), view.entrySet());
+            assertEquals(layout.view(word), view);
+            byMap.put(map, word);
+            views.add(view);
+        }
+
+        assertEquals(1 << 10, views.size());
+        for (Map<String, Boolean> view : views) {
+            assertEquals(Long.valueOf(layout.pack(view)), byMap.get(view));
+        }
+        assertNotEquals(layout.view(1), layout.view(2));
+        assertNotEquals(map(10, 1), layout.view(2));
+        assertNotEquals(layout.view(1), new PackedCircuit.Layout(names(10)).view(2));
+    }
+
+    @Test
+    public void stepsAndLabelsOnWords() {
+        PackedCircuit pc = new PackedCircuit(echo());
+        long x = pc.getInputs().pack(Collections.singletonMap("x", true));
+        long z = pc.getInputs().pack(Collections.singletonMap("z", true));
+        long on = pc.getRegisters().pack(Collections.singletonMap("r", true));
+
+        assertEquals(on, pc.step(x, 0));
+        assertEquals(0L, pc.step(x | z, on));
+        assertEquals(pc.getOutputs().pack(Collections.singletonMap("x", true)), pc.outputs(0, on));
+
+        assertEquals(set(), pc.label(0, 0));
+        assertEquals(set("z", "r", "x"), pc.label(z, on));
+        // x is on both as an input and as an output, and is listed once
+        assertEquals(set("x", "r"), pc.label(x, on));
+        assertEquals(2, pc.label(x, on).size());
+        assertTrue(pc.label(0, on).contains("x"));
+        assertFalse(pc.label(x, 0).contains("r"));
+    }
+}
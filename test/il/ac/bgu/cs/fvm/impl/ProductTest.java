@@ -0,0 +1,114 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class ProductTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // s0 -go-> s1 -go-> s2 -go-> s0, and s1 -stay-> s1; only s1 is g
+    static TransitionSystem<String, String, String> lights(FvmFacadeImpl fvm, boolean stay) {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.addState("s0");
+        ts.addState("s1");
+        ts.addState("s2");
+        ts.addAction("go");
+        ts.addAction("stay");
+        ts.addAtomicProposition("g");
+        ts.addToLabel("s1", "g");
+        ts.setInitial("s0", true);
+        ts.addTransition(new Transition<>("s0", "go", "s1"));
+        ts.addTransition(new Transition<>("s1", "go", "s2"));
+        ts.addTransition(new Transition<>("s2", "go", "s0"));
+        if (stay)
+            ts.addTransition(new Transition<>("s1", "stay", "s1"));
+        return ts;
+    }
+
+    // eventually always g
+    static Automaton<String, String> eventuallyAlwaysG() {
+        Automaton<String, String> aut = new Automaton<>();
+        aut.addTransition("q0", set(), "q0");
+        aut.addTransition("q0", set("g"), "q0");
+        aut.addTransition("q0", set("g"), "q1");
+        aut.addTransition("q1", set("g"), "q1");
+        aut.setInitial("q0");
+        aut.setAccepting("q1");
+        return aut;
+    }
+
+    private static Pair<String, String> p(String s, String q) {
+        return new Pair<>(s, q);
+    }
+
+    @SafeVarargs
+    private static Set<Pair<String, String>> states(Pair<String, String>... states) {
+        Set<Pair<String, String>> all = new HashSet<>();
+        for (Pair<String, String> state : states) {
+            all.add(state);
+        }
+        return all;
+    }
+
+    @SafeVarargs
+    private static Set<Transition<Pair<String, String>, String>> transitions(Transition<Pair<String, String>, String>... transitions) {
+        Set<Transition<Pair<String, String>, String>> all = new HashSet<>();
+        for (Transition<Pair<String, String>, String> tran : transitions) {
+            all.add(tran);
+        }
+        return all;
+    }
+
+    @Test
+    public void pairsEachStepWithAnAutomatonMove() {
+        TransitionSystem<Pair<String, String>, String, String> prod = fvm.product(lights(fvm, true), eventuallyAlwaysG());
+
+        assertEquals(states(p("s0", "q0"), p("s1", "q0"), p("s1", "q1"), p("s2", "q0")), prod.getStates());
+        assertEquals(states(p("s0", "q0")), prod.getInitialStates());
+        assertEquals(set("go", "stay"), prod.getActions());
+        assertEquals(set("q0", "q1"), prod.getAtomicPropositions());
+        assertEquals(transitions(
+                new Transition<>(p("s0", "q0"), "go", p("s1", "q0")),
+                new Transition<>(p("s0", "q0"), "go", p("s1", "q1")),
+                new Transition<>(p("s1", "q0"), "go", p("s2", "q0")),
+                new Transition<>(p("s1", "q0"), "stay", p("s1", "q0")),
+                new Transition<>(p("s1", "q0"), "stay", p("s1", "q1")),
+                new Transition<>(p("s1", "q1"), "stay", p("s1", "q1")),
+                new Transition<>(p("s2", "q0"), "go", p("s0", "q0"))), prod.getTransitions());
+        assertEquals(set("q0"), prod.getLabel(p("s0", "q0")));
+        assertEquals(set("q1"), prod.getLabel(p("s1", "q1")));
+    }
+
+    @Test
+    public void leavesOutPairsTheAutomatonCannotRead() {
+        // q1 has no move on {}, so the run through s1 in q1 can't go on to s2
+        TransitionSystem<Pair<String, String>, String, String> prod = fvm.product(lights(fvm, false), eventuallyAlwaysG());
+
+        assertEquals(states(p("s0", "q0"), p("s1", "q0"), p("s1", "q1"), p("s2", "q0")), prod.getStates());
+        assertEquals(transitions(
+                new Transition<>(p("s0", "q0"), "go", p("s1", "q0")),
+                new Transition<>(p("s0", "q0"), "go", p("s1", "q1")),
+                new Transition<>(p("s1", "q0"), "go", p("s2", "q0")),
+                new Transition<>(p("s2", "q0"), "go", p("s0", "q0"))), prod.getTransitions());
+    }
+
+    @Test
+    public void computesSuccessorsOnDemand() {
+        OnTheFlyProduct<String, String, String, String> prod = new OnTheFlyProduct<>(lights(fvm, true), eventuallyAlwaysG());
+
+        assertEquals(states(p("s0", "q0")), prod.initialStates());
+        assertEquals(states(p("s1", "q0"), p("s1", "q1")), new HashSet<>(prod.post(p("s0", "q0"))));
+        assertTrue(prod.isAccepting(p("s1", "q1")));
+        assertFalse(prod.isAccepting(p("s1", "q0")));
+    }
+}
@@ -0,0 +1,54 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.seq;
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class ProgramGraphImplTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    @Test
+    public void handsOutViewsThatFollowChanges() {
+        ProgramGraph<String, String> pg = fvm.createProgramGraph();
+        Set<String> locations = pg.getLocations();
+        Set<List<String>> inits = pg.getInitalizations();
+
+        pg.addLocation("l0");
+        pg.addInitalization(seq("x:=0"));
+        assertEquals(set("l0"), locations);
+        assertEquals(1, inits.size());
+
+        try {
+            inits.clear();
+            fail("initializations were changed around the graph");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(1, pg.getInitalizations().size());
+        }
+    }
+
+    @Test
+    public void dropsTheTransitionsOfARemovedLocation() {
+        ProgramGraphImpl<String, String> pg = new ProgramGraphImpl<>();
+        pg.addLocation("l0");
+        pg.addLocation("l1");
+        pg.addLocation("l2");
+        PGTransition<String, String> kept = new PGTransition<>("l0", "", "x:=1", "l2");
+        pg.addTransition(kept);
+        pg.addTransition(new PGTransition<>("l0", "", "x:=2", "l1"));
+        pg.addTransition(new PGTransition<>("l1", "x==2", "", "l2"));
+
+        pg.removeLocation("l1");
+        assertEquals(set("l0", "l2"), pg.getLocations());
+        assertEquals(Collections.singleton(kept), pg.getTransitions());
+        assertEquals(Collections.singleton(kept), pg.getTransitionsFrom("l0"));
+    }
+}
@@ -0,0 +1,100 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.seq;
+import static org.junit.Assert.*;
+
+public class ProgramGraphUnfoldingTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // "v:=n" sets v, "v++" counts v up modulo 10
+    static final ActionDef COUNTERS = new ActionDef() {
+        @Override
+        public Map<String, Object> effect(Map<String, Object> eval, Object action) {
+            Map<String, Object> next = new HashMap<>(eval);
+            String a = action.toString();
+            if (a.endsWith("++")) {
+                String var = a.substring(0, a.length() - 2);
+                next.put(var, ((Integer) eval.get(var) + 1) % 10);
+            }
+            else {
+                String[] parts = a.split(":=");
+                next.put(parts[0], Integer.parseInt(parts[1]));
+            }
+            return next;
+        }
+
+        @Override
+        public boolean isMatchingAction(Object candidate) {
+            return true;
+        }
+    };
+
+    // "" always holds, "v!=w" compares two variables
+    static final ConditionDef DIFFERENT = new ConditionDef() {
+        @Override
+        public boolean evaluate(Map<String, Object> eval, String condition) {
+            if (condition.isEmpty())
+                return true;
+            String[] parts = condition.split("!=");
+            return !eval.get(parts[0]).equals(eval.get(parts[1]));
+        }
+    };
+
+    // x and y count up in turns, and y only while it differs from x
+    static ProgramGraph<String, String> counters(FvmFacadeImpl fvm) {
+        ProgramGraph<String, String> pg = fvm.createProgramGraph();
+        pg.addLocation("l0");
+        pg.addLocation("l1");
+        pg.setInitial("l0", true);
+        pg.addInitalization(seq("x:=0", "y:=0"));
+        pg.addInitalization(seq("x:=5", "y:=0"));
+        pg.addTransition(new PGTransition<>("l0", "", "x++", "l1"));
+        pg.addTransition(new PGTransition<>("l1", "x!=y", "y++", "l0"));
+        pg.addTransition(new PGTransition<>("l1", "", "x++", "l1"));
+        return pg;
+    }
+
+    @Test
+    public void unfoldsInParallelLikeSequentially() {
+        Set<ActionDef> actionDefs = Collections.singleton(COUNTERS);
+        Set<ConditionDef> conditionDefs = Collections.singleton(DIFFERENT);
+        TransitionSystem<Pair<String, Map<String, Object>>, String, String> sequential =
+                fvm.transitionSystemFromProgramGraph(counters(fvm), actionDefs, conditionDefs);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int run = 0; run < 5; run++) {
+                TransitionSystem<Pair<String, Map<String, Object>>, String, String> parallel =
+                        fvm.transitionSystemFromProgramGraph(counters(fvm), actionDefs, conditionDefs, pool);
+
+                assertEquals(sequential.getStates(), parallel.getStates());
+                assertEquals(sequential.getInitialStates(), parallel.getInitialStates());
+                assertEquals(sequential.getTransitions(), parallel.getTransitions());
+                assertEquals(sequential.getActions(), parallel.getActions());
+                assertEquals(sequential.getAtomicPropositions(), parallel.getAtomicPropositions());
+                for (Pair<String, Map<String, Object>> s : sequential.getStates()) {
+                    assertEquals(sequential.getLabel(s), parallel.getLabel(s));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertEquals(190, sequential.getStates().size());
+    }
+}
@@ -0,0 +1,76 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class ReachTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // 0 -> 1 -> 2 -> {0, 5}; 3 -> 4 -> 5 can't be reached
+    private TransitionSystem<Integer, String, String> ts() {
+        TransitionSystem<Integer, String, String> ts = fvm.createTransitionSystem();
+        for (int s = 0; s < 6; s++) {
+            ts.addState(s);
+        }
+        ts.addAction("a");
+        ts.setInitial(0, true);
+        ts.addTransition(new Transition<>(0, "a", 1));
+        ts.addTransition(new Transition<>(1, "a", 2));
+        ts.addTransition(new Transition<>(2, "a", 0));
+        ts.addTransition(new Transition<>(2, "a", 5));
+        ts.addTransition(new Transition<>(3, "a", 4));
+        ts.addTransition(new Transition<>(4, "a", 5));
+        return ts;
+    }
+
+    @Test
+    public void reachesOnlyFromInitialStates() {
+        assertEquals(set(0, 1, 2, 5), fvm.reach(ts()));
+    }
+
+    @Test
+    public void reachesNothingWithoutInitialStates() {
+        TransitionSystem<Integer, String, String> ts = ts();
+        ts.setInitial(0, false);
+        assertEquals(set(), fvm.reach(ts));
+    }
+
+    @Test
+    public void reachesEverythingFromAllInitialStates() {
+        TransitionSystem<Integer, String, String> ts = ts();
+        ts.setInitial(3, true);
+        assertEquals(set(0, 1, 2, 3, 4, 5), fvm.reach(ts));
+    }
+
+    @Test
+    public void stopsAtTheStateBudget() {
+        // states are reached breadth first, so the first ones are fixed
+        assertEquals(set(), fvm.reach(ts(), 0, s -> false));
+        assertEquals(set(0), fvm.reach(ts(), 1, s -> false));
+        assertEquals(set(0, 1, 2), fvm.reach(ts(), 3, s -> false));
+        assertEquals(set(0, 1, 2, 5), fvm.reach(ts(), 100, s -> false));
+    }
+
+    @Test
+    public void stopsRightAfterTheStopState() {
+        Set<Integer> reached = fvm.reach(ts(), Integer.MAX_VALUE, s -> s == 2);
+        assertEquals(set(0, 1, 2), reached);
+    }
+
+    @Test
+    public void keepsTheFrontierReachAfterChanges() {
+        TransitionSystem<Integer, String, String> ts = ts();
+        assertEquals(set(0, 1, 2, 5), fvm.reach(ts));
+        ts.addTransition(new Transition<>(5, "a", 3));
+        assertEquals(set(0, 1, 2, 3, 4, 5), fvm.reach(ts));
+        ts.removeTransition(new Transition<>(2, "a", 5));
+        assertEquals(set(0, 1, 2), fvm.reach(ts));
+    }
+}
@@ -0,0 +1,121 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.impl.ProgramGraphUnfoldingTest.COUNTERS;
+import static il.ac.bgu.cs.fvm.impl.ProgramGraphUnfoldingTest.DIFFERENT;
+import static il.ac.bgu.cs.fvm.impl.ProgramGraphUnfoldingTest.counters;
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class SimulatorTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    // a 3-bit counter that counts up while x is on; y is on at 7
+    private static Circuit counter() {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return set("x");
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                return new LinkedHashSet<>(Arrays.asList("r0", "r1", "r2"));
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return set("y");
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                int value = (registers.get("r0") ? 1 : 0) + (registers.get("r1") ? 2 : 0) + (registers.get("r2") ? 4 : 0);
+                if (inputs.get("x"))
+                    value = (value + 1) % 8;
+                Map<String, Boolean> next = new HashMap<>();
+                for (int i = 0; i < 3; i++) {
+                    next.put("r" + i, (value & (1 << i)) != 0);
+                }
+                return next;
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                return Collections.singletonMap("y", registers.get("r0") && registers.get("r1") && registers.get("r2"));
+            }
+        };
+    }
+
+    // the states and actions of a run, in order
+    private static List<Object> items(AlternatingSequence<?, ?> run) {
+        List<Object> items = new ArrayList<>();
+        while (run.size() > 0) {
+            items.add(run.head());
+            run = run.tail();
+        }
+        return items;
+    }
+
+    @Test
+    public void findsAFragmentOfTheCircuitsTransitionSystem() {
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = fvm.transitionSystemFromCircuit(counter());
+
+        for (long seed = 0; seed < 10; seed++) {
+            AlternatingSequence<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> witness =
+                    Simulator.of(counter()).withSeed(seed).findViolatingFragment(label -> !label.contains("y"), 100, 50);
+
+            assertNotNull(witness);
+            assertTrue(fvm.isInitialExecutionFragment(ts, witness));
+            assertTrue(ts.getLabel(witness.last()).contains("y"));
+        }
+    }
+
+    @Test
+    public void findsAFragmentOfTheProgramGraphsTransitionSystem() {
+        Set<ActionDef> actionDefs = Collections.singleton(COUNTERS);
+        Set<ConditionDef> conditionDefs = Collections.singleton(DIFFERENT);
+        TransitionSystem<Pair<String, Map<String, Object>>, String, String> ts = fvm.transitionSystemFromProgramGraph(counters(fvm), actionDefs, conditionDefs);
+
+        for (long seed = 0; seed < 10; seed++) {
+            AlternatingSequence<Pair<String, Map<String, Object>>, String> witness = Simulator.of(counters(fvm), actionDefs, conditionDefs)
+                    .withSeed(seed).findViolatingFragment(label -> !label.contains("y = 9"), 100, 100);
+
+            assertNotNull(witness);
+            assertTrue(fvm.isInitialExecutionFragment(ts, witness));
+            assertTrue(ts.getLabel(witness.last()).contains("y = 9"));
+        }
+    }
+
+    @Test
+    public void findsNothingWhenTheInvariantHolds() {
+        assertNull(Simulator.of(counter()).withSeed(1).findViolatingFragment(label -> !label.contains("z"), 20, 20));
+    }
+
+    @Test
+    public void repeatsItselfForOneSeed() {
+        AlternatingSequence<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> first =
+                Simulator.of(counter()).withSeed(7).findViolatingFragment(label -> !label.contains("y"), 100, 50);
+        AlternatingSequence<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> second =
+                Simulator.of(counter()).withSeed(7).findViolatingFragment(label -> !label.contains("y"), 100, 50);
+
+        assertEquals(items(first), items(second));
+    }
+}
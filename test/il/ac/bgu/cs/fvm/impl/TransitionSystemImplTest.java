@@ -0,0 +1,68 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+import static org.junit.Assert.*;
+
+public class TransitionSystemImplTest {
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    @Test
+    public void handsOutViewsThatFollowChanges() {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        Set<String> states = ts.getStates();
+        Set<String> actions = ts.getActions();
+        Set<Transition<String, String>> transitions = ts.getTransitions();
+
+        ts.addState("s");
+        ts.addAction("a");
+        ts.addTransition(new Transition<>("s", "a", "s"));
+        assertEquals(set("s"), states);
+        assertEquals(set("a"), actions);
+        assertEquals(1, transitions.size());
+
+        try {
+            states.add("t");
+            fail("states were changed around the system");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(set("s"), ts.getStates());
+        }
+    }
+
+    @Test
+    public void copiesLabels() {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.addState("s");
+        ts.addAtomicProposition("p");
+        ts.addAtomicProposition("q");
+        ts.addToLabel("s", "p");
+
+        Set<String> label = ts.getLabel("s");
+        label.add("q");
+        assertEquals(set("p"), ts.getLabel("s"));
+    }
+
+    @Test
+    public void sharesOneInstancePerDistinctLabel() {
+        TransitionSystemImpl<String, String, String> ts = new TransitionSystemImpl<>();
+        ts.addState("s");
+        ts.addState("t");
+        ts.addAtomicProposition("p");
+        ts.addAtomicProposition("q");
+        ts.addToLabel("s", "p");
+        ts.addToLabel("s", "q");
+        ts.addToLabel("t", "q");
+        ts.addToLabel("t", "p");
+
+        assertSame(ts.labelOf("s"), ts.labelOf("t"));
+        ts.removeLabel("t", "p");
+        assertEquals(set("q"), ts.labelOf("t"));
+        assertEquals(set("p", "q"), ts.labelOf("s"));
+    }
+}
@@ -0,0 +1,74 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ValuationTest {
+
+    private final Valuation.Layout layout = new Valuation.Layout();
+
+    // ints, booleans, other objects and null, spread over more than one chunk
+    private static Map<String, Object> mixed() {
+        Map<String, Object> eval = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            eval.put("x" + i, i * 1000);
+        }
+        eval.put("on", true);
+        eval.put("off", false);
+        eval.put("name", "abc");
+        eval.put("nothing", null);
+        eval.put("big", 5L);
+        return eval;
+    }
+
+    @Test
+    public void actsLikeTheMapItWasMadeOf() {
+        Map<String, Object> eval = mixed();
+        Valuation v = layout.of(eval);
+
+        assertEquals(eval, v);
+        assertEquals(v, eval);
+        assertEquals(eval.hashCode(), v.hashCode());
+        assertEquals(eval.entrySet(), v.entrySet());
+        assertEquals(eval.size(), v.size());
+        assertEquals(Integer.valueOf(7000), v.get("x7"));
+        assertEquals(Boolean.TRUE, v.get("on"));
+        assertEquals(Boolean.FALSE, v.get("off"));
+        assertEquals(5L, v.get("big"));
+        assertTrue(v.containsKey("nothing"));
+        assertNull(v.get("nothing"));
+        assertFalse(v.containsKey("missing"));
+    }
+
+    @Test
+    public void keepsTheHashUpToDateAcrossEdits() {
+        Valuation v = layout.of(mixed());
+        Valuation edited = v.edit().put("x3", true).put("on", 1).put("name", 2).remove("x19").put("fresh", "new").build();
+
+        Map<String, Object> expected = mixed();
+        expected.put("x3", true);
+        expected.put("on", 1);
+        expected.put("name", 2);
+        expected.remove("x19");
+        expected.put("fresh", "new");
+        assertEquals(expected, edited);
+        assertEquals(expected.hashCode(), edited.hashCode());
+        assertEquals(mixed(), v);
+    }
+
+    @Test
+    public void comparesValuesNotHowTheyWereReached() {
+        Valuation v = layout.of(mixed());
+        Valuation back = v.edit().put("x3", false).put("name", 4).build().edit().put("x3", 3000).put("name", "abc").build();
+
+        assertEquals(v, back);
+        assertEquals(v.hashCode(), back.hashCode());
+        assertNotEquals(v, v.edit().put("on", 1).build());
+        assertNotEquals(v, v.edit().put("x0", false).build());
+        assertEquals(v, v.edit().remove("missing").build());
+    }
+}